@@ -0,0 +1,80 @@
+package com.luoying.config;
+
+import cn.hutool.core.io.FileUtil;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Volume;
+import com.luoying.core.monitor.ContainerStateCache;
+import com.luoying.core.pool.ContainerPool;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.luoying.core.template.DockerCodeSandBoxTemplate.topDirPath;
+
+/**
+ * 容器池配置
+ *
+ * @Author 落樱的悔恨
+ */
+@Configuration
+public class ContainerPoolConfig {
+    // 构建 项目目录/顶级目录
+    private static final String topDir = System.getProperty("user.dir") + File.separator + topDirPath;
+
+    @Bean
+    @ConfigurationProperties(prefix = "sandbox.pool")
+    public ContainerPoolProperties containerPoolProperties() {
+        return new ContainerPoolProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "sandbox.compile-pool")
+    public ContainerPoolProperties compileContainerPoolProperties() {
+        ContainerPoolProperties properties = new ContainerPoolProperties();
+        // 编译容器默认：数量为CPU核心数的一半，每个容器最多使用1核、1G内存，/tmp 使用内存文件系统
+        int size = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        properties.setSize(size);
+        properties.setMinRunning(size);
+        properties.setNamePrefix("code-sandbox-compile-container-");
+        properties.setMemory(1024 * 1024 * 1024L);
+        properties.setNanoCpus(1000000000L);
+        properties.getTmpfs().put("/tmp", "rw,exec,size=512m");
+        return properties;
+    }
+
+    /**
+     * 运行用户代码的容器池
+     */
+    @Bean(initMethod = "init", destroyMethod = "shutdown")
+    public ContainerPool containerPool(DockerClient dockerClient, ContainerStateCache containerStateCache,
+                                       @Qualifier("containerPoolProperties") ContainerPoolProperties containerPoolProperties) {
+        // 把 项目目录/顶级目录 挂载到 容器内的/app目录
+        Bind bind = new Bind(topDir, new Volume("/app"));
+        return new ContainerPool(dockerClient, containerStateCache, containerPoolProperties, Collections.singletonList(bind));
+    }
+
+    /**
+     * 编译用户代码的容器池（与运行容器分开限制资源，编译高峰不影响运行以及Web服务）
+     */
+    @Bean(initMethod = "init", destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "sandbox.compile-pool", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ContainerPool compileContainerPool(DockerClient dockerClient, ContainerStateCache containerStateCache,
+                                              @Qualifier("compileContainerPoolProperties") ContainerPoolProperties compileContainerPoolProperties,
+                                              @Value("${sandbox.build-cache.dir:${user.dir}/buildCache}") String buildCacheDir) {
+        // 用户代码目录、编译缓存目录按宿主机上的路径原样挂载：
+        // 编译命令中的路径无需转换，编译产物直接写入运行容器挂载的目录，不需要复制
+        FileUtil.mkdir(topDir);
+        FileUtil.mkdir(buildCacheDir);
+        List<Bind> binds = Arrays.asList(new Bind(topDir, new Volume(topDir)), new Bind(buildCacheDir, new Volume(buildCacheDir)));
+        return new ContainerPool(dockerClient, containerStateCache, compileContainerPoolProperties, binds);
+    }
+}
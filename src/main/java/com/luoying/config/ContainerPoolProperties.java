@@ -0,0 +1,69 @@
+package com.luoying.config;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 容器池配置
+ *
+ * @Author 落樱的悔恨
+ */
+@Data
+public class ContainerPoolProperties {
+    /**
+     * 容器数量
+     */
+    private int size = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 容器名称前缀（容器的实际名称：前缀 + 序号）
+     */
+    private String namePrefix = "code-sandbox-container-";
+
+    /**
+     * 镜像名称
+     */
+    private String imageName = "multi-language-image";
+
+    /**
+     * 最大内存 byte
+     */
+    private long memory = 128 * 1024 * 1024L;
+
+    /**
+     * cpu核心数
+     */
+    private long cpuCount = 1L;
+
+    /**
+     * cpu限制（单位 1e-9 核，0 表示不限制）
+     */
+    private long nanoCpus = 0L;
+
+    /**
+     * 内存文件系统挂载（容器内路径 -> 挂载选项），只读根文件系统下提供可写的临时目录
+     */
+    private Map<String, String> tmpfs = new HashMap<>();
+
+    /**
+     * 获取容器的最大等待时间 ms
+     */
+    private long acquireTimeout = 30000L;
+
+    /**
+     * 空闲超时时间 ms（超过该时间未被使用的容器会被停止，再次使用时重新启动）
+     */
+    private long idleTimeout = 10 * 60 * 1000L;
+
+    /**
+     * 最少保持运行的空闲容器数量（不受空闲超时影响）
+     */
+    private int minRunning = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 维护任务（空闲回收、健康检查）的执行间隔 ms
+     */
+    private long maintainInterval = 30000L;
+}
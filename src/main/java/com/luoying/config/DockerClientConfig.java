@@ -0,0 +1,70 @@
+package com.luoying.config;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import com.github.dockerjava.transport.DockerHttpClient;
+import com.luoying.core.monitor.CountingDockerHttpClient;
+import com.luoying.core.monitor.DockerApiMetrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * DockerClient 配置
+ * 整个服务共用一个基于 httpclient5 连接池的 DockerClient，连接在多次提交之间保持复用
+ *
+ * @Author 落樱的悔恨
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sandbox.docker")
+@Data
+@Slf4j
+public class DockerClientConfig {
+    /**
+     * Docker 地址，为空时使用默认配置（环境变量 DOCKER_HOST 或 unix:///var/run/docker.sock）
+     */
+    private String host;
+
+    /**
+     * 最大连接数（每个执行中的 exec、stats 流都会占用一个连接）
+     */
+    private int maxConnections = 200;
+
+    /**
+     * 建立连接超时时间 ms
+     */
+    private long connectionTimeout = 5000L;
+
+    /**
+     * 响应超时时间 ms，0 表示不限制（events、stats 等长连接流长时间没有数据是正常的）
+     */
+    private long responseTimeout = 0L;
+
+    @Bean(destroyMethod = "close")
+    public DockerClient dockerClient(DockerApiMetrics dockerApiMetrics) {
+        DefaultDockerClientConfig.Builder configBuilder = DefaultDockerClientConfig.createDefaultConfigBuilder();
+        if (StringUtils.isNotBlank(host)) {
+            configBuilder.withDockerHost(host);
+        }
+        DefaultDockerClientConfig config = configBuilder.build();
+        ApacheDockerHttpClient.Builder httpClientBuilder = new ApacheDockerHttpClient.Builder()
+                .dockerHost(config.getDockerHost())
+                .sslConfig(config.getSSLConfig())
+                .maxConnections(maxConnections)
+                .connectionTimeout(Duration.ofMillis(connectionTimeout));
+        if (responseTimeout > 0) {
+            httpClientBuilder.responseTimeout(Duration.ofMillis(responseTimeout));
+        }
+        // 统计每个 Docker API 的调用次数
+        DockerHttpClient httpClient = new CountingDockerHttpClient(httpClientBuilder.build(), dockerApiMetrics);
+        log.info("创建DockerClient host={} maxConnections={}", config.getDockerHost(), maxConnections);
+        return DockerClientImpl.getInstance(config, httpClient);
+    }
+}
@@ -0,0 +1,48 @@
+package com.luoying.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 提交调度配置
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@ConfigurationProperties(prefix = "sandbox.scheduler")
+@Data
+public class SubmissionSchedulerProperties {
+    /**
+     * 是否启用（关闭后按提交顺序交给执行器）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同时执行的提交数（0 为执行器的容量与运行容器数中较小的一个；执行器容量 platform 模式为线程数，virtual 模式为同时执行的提交数上限）
+     */
+    private int concurrency = 0;
+
+    /**
+     * 请求没有指定优先级时使用的优先级
+     */
+    private String defaultPriority = "practice";
+
+    /**
+     * 优先级 -> 排队上限，超过后拒绝提交
+     */
+    private Map<String, Integer> queueLimits = new HashMap<>();
+
+    /**
+     * 优先级 -> 预期等待时间上限 ms（排队提交的预期耗时之和 / 并发数），超过后拒绝提交，0 为不限制
+     */
+    private Map<String, Long> maxExpectedWaits = new HashMap<>();
+
+    /**
+     * 租户 -> 权重（同一优先级内按权重分配执行机会，默认 1）
+     */
+    private Map<String, Integer> tenantWeights = new HashMap<>();
+}
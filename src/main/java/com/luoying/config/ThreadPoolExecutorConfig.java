@@ -1,9 +1,11 @@
 package com.luoying.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class ThreadPoolExecutorConfig {
@@ -25,15 +27,10 @@ public class ThreadPoolExecutorConfig {
      */
     private static final TimeUnit unit = TimeUnit.SECONDS;
 
-    /**
-     * 任务对垒
-     */
-    private static final LinkedBlockingQueue queue = new LinkedBlockingQueue(1000);
-
     /**
      * 线程名称
      */
-    private static final String threadName = "container-pool-thread-";
+    private static final String threadName = "code-sandbox-thread-";
 
     /**
      * 线程工厂
@@ -52,12 +49,39 @@ public class ThreadPoolExecutorConfig {
 
     /**
      * 拒绝策略
+     * 队列满时直接拒绝，由接口返回 429，不在调用线程（Tomcat 工作线程）中执行
      */
-    private static final RejectedExecutionHandler policy = new ThreadPoolExecutor.CallerRunsPolicy();
+    private static final RejectedExecutionHandler policy = new ThreadPoolExecutor.AbortPolicy();
 
 
+    /**
+     * 执行提交的线程池
+     *
+     * @param queueCapacity 任务队列容量（准入上限）
+     */
     @Bean()
-    public ThreadPoolExecutor threadPoolExecutor() {
-        return new ThreadPoolExecutor(coreThreads, maxThreads, keepAliveTime, unit, queue, threadFactory, policy);
+    public ThreadPoolExecutor threadPoolExecutor(@Value("${sandbox.executor.queue-capacity:1000}") int queueCapacity) {
+        return new ThreadPoolExecutor(coreThreads, maxThreads, keepAliveTime, unit, new LinkedBlockingQueue<>(queueCapacity), threadFactory, policy);
+    }
+
+    /**
+     * 并行执行输入用例的线程池
+     * 与提交线程池分开，避免提交任务等待自己提交的用例任务而互相占满线程；
+     * 不排队，线程用完时由提交线程自己执行
+     */
+    @Bean()
+    public ThreadPoolExecutor caseThreadPoolExecutor() {
+        ThreadFactory caseThreadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setName("code-sandbox-case-thread-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(0, coreThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), caseThreadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
     }
 }
\ No newline at end of file
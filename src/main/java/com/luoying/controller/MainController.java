@@ -1,39 +1,85 @@
 package com.luoying.controller;
 
+import com.luoying.core.ExecuteCodeListener;
+import com.luoying.core.SubmissionExecutor;
 import com.luoying.core.docker.DockerCodeSandboxFactory;
 import com.luoying.core.nativ.NativeCodeSandboxFactory;
+import com.luoying.core.scheduler.BatchExecutor;
+import com.luoying.core.scheduler.SubmissionScheduler;
 import com.luoying.core.template.DockerCodeSandBoxTemplate;
 import com.luoying.core.template.NativeCodeSandBoxTemplate;
+import com.luoying.exception.SandboxBusyException;
+import com.luoying.model.ExecuteCodeBatchResult;
 import com.luoying.model.ExecuteCodeRequest;
 import com.luoying.model.ExecuteCodeResponse;
+import com.luoying.model.ExecuteMessage;
 import com.luoying.model.enums.QuestionSubmitLanguageEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author 落樱的悔恨
  * 执行代码
  */
 @RestController
+@Slf4j
 public class MainController {
     // 定义鉴权请求头和密钥
     private static final String AUTH_REQUEST_HEADER = "auth";
     private static final String AUTH_REQUEST_SECRET = "secretKey";
 
+    // 拒绝提交时建议的重试间隔 s
+    @Value("${sandbox.executor.retry-after:1}")
+    private long retryAfter;
+
+    // 批量执行最多的请求数
+    @Value("${sandbox.batch.max-size:1000}")
+    private int batchMaxSize;
+
+    // 批量执行的超时时间 ms
+    @Value("${sandbox.batch.timeout:1800000}")
+    private long batchTimeout;
+
+    // 流式执行的超时时间 ms
+    @Value("${sandbox.stream.timeout:300000}")
+    private long streamTimeout;
+
     @Resource
-    private ThreadPoolExecutor threadPoolExecutor;
+    private BatchExecutor batchExecutor;
+
+    @Resource
+    private SubmissionScheduler submissionScheduler;
+
+    @Resource
+    private SubmissionExecutor submissionExecutor;
+
+    @Resource
+    private DockerCodeSandboxFactory dockerCodeSandboxFactory;
+
+    @Resource
+    private NativeCodeSandboxFactory nativeCodeSandboxFactory;
 
 
     /**
      * 执行代码
+     * 异步返回：提交到调度器后立即释放 Tomcat 工作线程，执行完成后再写回响应；
+     * 对应优先级的队列已满时返回 429，正在关闭时返回 503
      *
      * @param executeCodeRequest 执行代码请求
      * @param request            {@link HttpServletRequest}
@@ -41,12 +87,12 @@ public class MainController {
      * @return {@link ExecuteCodeResponse 执行代码响应}
      */
     @PostMapping("/executeCode")
-    ExecuteCodeResponse executeCode(@RequestBody ExecuteCodeRequest executeCodeRequest, HttpServletRequest request, HttpServletResponse response) {
+    CompletableFuture<ExecuteCodeResponse> executeCode(@RequestBody ExecuteCodeRequest executeCodeRequest, HttpServletRequest request, HttpServletResponse response) {
         // todo 改造成API签名认证
         String authHeader = request.getHeader(AUTH_REQUEST_HEADER);
         if (!AUTH_REQUEST_SECRET.equals(authHeader)) {
             response.setStatus(403);
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
         // 判空
         if (executeCodeRequest == null) {
@@ -54,18 +100,148 @@ public class MainController {
         }
         // 根据编程语言获取对应的代码沙箱
         // 原生代码沙箱
-        /*NativeCodeSandBoxTemplate codeSandBoxTemplate = NativeCodeSandboxFactory
+        /*NativeCodeSandBoxTemplate codeSandBoxTemplate = nativeCodeSandboxFactory
                 .getInstance(QuestionSubmitLanguageEnum.getEnumByValue(executeCodeRequest.getLanguage()));
         return codeSandBoxTemplate.executeCode(executeCodeRequest);*/
         // Docker代码沙箱
-        DockerCodeSandBoxTemplate codeSandBoxTemplate = DockerCodeSandboxFactory.getInstance(QuestionSubmitLanguageEnum.getEnumByValue(executeCodeRequest.getLanguage()));
+        DockerCodeSandBoxTemplate codeSandBoxTemplate = dockerCodeSandboxFactory.getInstance(QuestionSubmitLanguageEnum.getEnumByValue(executeCodeRequest.getLanguage()));
         // 执行代码
-        Callable<ExecuteCodeResponse> callable = () -> codeSandBoxTemplate.executeCode(executeCodeRequest);
-        Future<ExecuteCodeResponse> future = threadPoolExecutor.submit(callable);
         try {
-            return future.get();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return submissionScheduler.submit(executeCodeRequest, () -> codeSandBoxTemplate.executeCode(executeCodeRequest));
+        } catch (RejectedExecutionException e) {
+            if (submissionExecutor.isShutdown()) {
+                throw new SandboxBusyException("沙箱正在关闭", 503, retryAfter);
+            }
+            throw new SandboxBusyException("沙箱繁忙，请稍后重试", 429, retryAfter);
+        }
+    }
+
+    /**
+     * 流式执行代码（Server-Sent Events）
+     * 依次返回事件：compile（编译信息 {@link ExecuteMessage}）、case（每个用例结束后返回执行信息，事件 id 为输入用例的下标，
+     * 分片并行执行时不保证顺序）、result（最终的 {@link ExecuteCodeResponse}），出错时返回 error；
+     * 客户端断开连接（例如判题服务发现答案错误）后不再执行剩余的用例
+     *
+     * @param executeCodeRequest 执行代码请求
+     * @param request            {@link HttpServletRequest}
+     * @param response           {@link HttpServletResponse}
+     * @return {@link SseEmitter}
+     */
+    @PostMapping(value = "/executeCode/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter executeCodeStream(@RequestBody ExecuteCodeRequest executeCodeRequest, HttpServletRequest request, HttpServletResponse response) {
+        String authHeader = request.getHeader(AUTH_REQUEST_HEADER);
+        if (!AUTH_REQUEST_SECRET.equals(authHeader)) {
+            response.setStatus(403);
+            return null;
+        }
+        // 判空
+        if (executeCodeRequest == null) {
+            throw new RuntimeException("请求参数为空");
+        }
+        DockerCodeSandBoxTemplate codeSandBoxTemplate = dockerCodeSandboxFactory.getInstance(QuestionSubmitLanguageEnum.getEnumByValue(executeCodeRequest.getLanguage()));
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        emitter.onCompletion(() -> cancelled.set(true));
+        emitter.onTimeout(() -> cancelled.set(true));
+        emitter.onError(throwable -> cancelled.set(true));
+        ExecuteCodeListener listener = new ExecuteCodeListener() {
+            @Override
+            public void onCompiled(ExecuteMessage compileMessage) {
+                send(emitter, cancelled, SseEmitter.event().name("compile").data(compileMessage, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onCaseFinished(int index, ExecuteMessage executeMessage) {
+                send(emitter, cancelled, SseEmitter.event().name("case").id(String.valueOf(index)).data(executeMessage, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled.get();
+            }
+        };
+        CompletableFuture<ExecuteCodeResponse> future;
+        try {
+            // 排队期间客户端已断开的提交不再执行
+            future = submissionScheduler.submit(executeCodeRequest, () -> cancelled.get() ? null : codeSandBoxTemplate.executeCode(executeCodeRequest, listener));
+        } catch (RejectedExecutionException e) {
+            if (submissionExecutor.isShutdown()) {
+                throw new SandboxBusyException("沙箱正在关闭", 503, retryAfter);
+            }
+            throw new SandboxBusyException("沙箱繁忙，请稍后重试", 429, retryAfter);
+        }
+        future.whenComplete((executeCodeResponse, throwable) -> {
+            if (throwable == null) {
+                send(emitter, cancelled, SseEmitter.event().name("result").data(executeCodeResponse, MediaType.APPLICATION_JSON));
+            } else {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                send(emitter, cancelled, SseEmitter.event().name("error").data(String.valueOf(cause.getMessage())));
+            }
+            emitter.complete();
+        });
+        return emitter;
+    }
+
+    /**
+     * 批量执行代码
+     * 所有请求一起交给调度器，每个请求完成后立即按行返回一个 {@link ExecuteCodeBatchResult}（NDJSON，按完成顺序，通过下标对应请求）；
+     * 单个请求被拒绝或者失败时只在对应的结果中返回错误
+     *
+     * @param executeCodeRequests 执行代码请求
+     * @param request             {@link HttpServletRequest}
+     * @param response            {@link HttpServletResponse}
+     * @return {@link ResponseBodyEmitter}
+     */
+    @PostMapping(value = "/executeCode/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseBodyEmitter executeCodeBatch(@RequestBody List<ExecuteCodeRequest> executeCodeRequests, HttpServletRequest request, HttpServletResponse response) {
+        String authHeader = request.getHeader(AUTH_REQUEST_HEADER);
+        if (!AUTH_REQUEST_SECRET.equals(authHeader)) {
+            response.setStatus(403);
+            return null;
+        }
+        // 判空、限制数量
+        if (executeCodeRequests == null || executeCodeRequests.isEmpty() || executeCodeRequests.size() > batchMaxSize) {
+            response.setStatus(400);
+            return null;
+        }
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeout);
+        batchExecutor.execute(executeCodeRequests,
+                        executeCodeRequest -> dockerCodeSandboxFactory.getInstance(QuestionSubmitLanguageEnum.getEnumByValue(executeCodeRequest.getLanguage())),
+                        result -> send(emitter, result))
+                .whenComplete((ignored, throwable) -> emitter.complete());
+        return emitter;
+    }
+
+    /**
+     * 写回一个事件（分片并行执行时多个线程同时写入），写入失败说明客户端已断开，取消剩余的用例
+     */
+    private static void send(SseEmitter emitter, AtomicBoolean cancelled, SseEmitter.SseEventBuilder event) {
+        if (cancelled.get()) {
+            return;
+        }
+        synchronized (emitter) {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                log.info("写回流式执行结果失败：{}", e.getMessage());
+                cancelled.set(true);
+            }
+        }
+    }
+
+    /**
+     * 写回一行结果（多个线程同时完成时逐行写入）
+     */
+    private static void send(ResponseBodyEmitter emitter, ExecuteCodeBatchResult result) {
+        synchronized (emitter) {
+            try {
+                emitter.send(result, MediaType.APPLICATION_JSON);
+                emitter.send("\n", MediaType.TEXT_PLAIN);
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开或者已超时，剩余的请求照常执行完
+                log.info("写回批量执行结果失败 index={}：{}", result.getIndex(), e.getMessage());
+            }
         }
     }
 }
@@ -0,0 +1,79 @@
+package com.luoying.controller;
+
+import com.luoying.core.SubmissionExecutor;
+import com.luoying.core.cache.CompileCache;
+import com.luoying.core.compiler.CompileExecutor;
+import com.luoying.core.monitor.DockerApiMetrics;
+import com.luoying.core.pool.ContainerPool;
+import com.luoying.core.scheduler.SubmissionScheduler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author 落樱的悔恨
+ * 沙箱运行指标
+ */
+@RestController
+public class MetricsController {
+    // 定义鉴权请求头和密钥
+    private static final String AUTH_REQUEST_HEADER = "auth";
+    private static final String AUTH_REQUEST_SECRET = "secretKey";
+
+    @Resource
+    private DockerApiMetrics dockerApiMetrics;
+
+    @Resource
+    private ContainerPool containerPool;
+
+    @Resource
+    private CompileCache compileCache;
+
+    @Resource
+    private CompileExecutor compileExecutor;
+
+    @Resource
+    private SubmissionExecutor submissionExecutor;
+
+    @Resource
+    private SubmissionScheduler submissionScheduler;
+
+    /**
+     * 获取沙箱运行指标
+     *
+     * @param request  {@link HttpServletRequest}
+     * @param response {@link HttpServletResponse}
+     * @return 指标
+     */
+    @GetMapping("/metrics")
+    Map<String, Object> metrics(HttpServletRequest request, HttpServletResponse response) {
+        String authHeader = request.getHeader(AUTH_REQUEST_HEADER);
+        if (!AUTH_REQUEST_SECRET.equals(authHeader)) {
+            response.setStatus(403);
+            return null;
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        // Docker API 调用
+        metrics.put("dockerApi", dockerApiMetrics.snapshot());
+        // 容器池
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("size", containerPool.getSize());
+        pool.put("idle", containerPool.getIdleCount());
+        pool.put("waiting", containerPool.getWaitingCount());
+        metrics.put("containerPool", pool);
+        // 编译容器池（未启用时为 null）
+        metrics.put("compilePool", compileExecutor.snapshot());
+        // 编译缓存
+        metrics.put("compileCache", compileCache.snapshot());
+        // 提交执行器
+        metrics.put("executor", submissionExecutor.snapshot());
+        // 提交调度（各优先级的排队数、等待时间）
+        metrics.put("scheduler", submissionScheduler.snapshot());
+        return metrics;
+    }
+}
@@ -16,4 +16,15 @@ public interface CodeSandBox {
      * @return {@link ExecuteCodeResponse 执行代码响应}
      */
     ExecuteCodeResponse executeCode(ExecuteCodeRequest executeCodeRequest);
+
+    /**
+     * 执行代码，并通过监听器返回编译结果和每个用例的执行结果（默认只返回最终结果）
+     *
+     * @param executeCodeRequest 执行代码请求
+     * @param listener           {@link ExecuteCodeListener}
+     * @return {@link ExecuteCodeResponse 执行代码响应}
+     */
+    default ExecuteCodeResponse executeCode(ExecuteCodeRequest executeCodeRequest, ExecuteCodeListener listener) {
+        return executeCode(executeCodeRequest);
+    }
 }
@@ -0,0 +1,40 @@
+package com.luoying.core;
+
+import com.luoying.model.ExecuteMessage;
+
+/**
+ * @author 落樱的悔恨
+ * 执行代码过程的监听器（流式返回编译结果和每个用例的执行结果）
+ * 回调可能在不同的线程中调用（输入用例分片并行执行时）
+ */
+public interface ExecuteCodeListener {
+    /**
+     * 不监听
+     */
+    ExecuteCodeListener NOOP = new ExecuteCodeListener() {
+    };
+
+    /**
+     * 编译结束（不需要编译或者命中编译缓存时退出码为 0）
+     *
+     * @param compileMessage 编译信息
+     */
+    default void onCompiled(ExecuteMessage compileMessage) {
+    }
+
+    /**
+     * 一个输入用例执行结束
+     *
+     * @param index          输入用例的下标
+     * @param executeMessage 执行信息
+     */
+    default void onCaseFinished(int index, ExecuteMessage executeMessage) {
+    }
+
+    /**
+     * 是否已取消（例如客户端断开），取消后不再执行剩余的输入用例
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
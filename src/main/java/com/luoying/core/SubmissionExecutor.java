@@ -0,0 +1,128 @@
+package com.luoying.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 提交执行器
+ * platform：提交交给固定大小的线程池，线程数即同时执行的提交数；
+ * virtual：每个提交使用一个虚拟线程（JDK 21+），同时执行的提交数由信号量限制，
+ * 容器、编译等真正占用资源的部分仍由容器池、编译容器池以及编译信号量限制，
+ * 提交在等待 Docker 调用、进程结束时不占用平台线程；JDK 不支持虚拟线程时退回 platform
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class SubmissionExecutor {
+    private static final String MODE_VIRTUAL = "virtual";
+
+    // 执行模式：platform / virtual
+    @Value("${sandbox.executor.mode:platform}")
+    private String mode;
+
+    // virtual 模式下同时执行的提交数上限（超过后拒绝）
+    @Value("${sandbox.executor.max-in-flight:2000}")
+    private int maxInFlight;
+
+    // platform 模式使用的线程池
+    @Resource
+    private ThreadPoolExecutor threadPoolExecutor;
+
+    // 虚拟线程执行器（virtual 模式）
+    private ExecutorService virtualExecutor;
+
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        if (!MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            return;
+        }
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor 从 JDK 21 开始提供，通过反射调用
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            virtualExecutor = (ExecutorService) method.invoke(null);
+            permits = new Semaphore(maxInFlight);
+            log.info("提交执行器使用虚拟线程，同时执行的提交数上限:{}", maxInFlight);
+        } catch (Exception e) {
+            log.warn("当前 JDK 不支持虚拟线程，提交执行器使用线程池");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param task 任务
+     * @return {@link CompletableFuture}
+     * @throws RejectedExecutionException 队列已满、同时执行的提交数达到上限或者正在关闭
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (virtualExecutor == null) {
+            return CompletableFuture.supplyAsync(task, threadPoolExecutor);
+        }
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("同时执行的提交数达到上限");
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    permits.release();
+                }
+            }, virtualExecutor);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 执行器的容量：platform 模式为线程数，virtual 模式为同时执行的提交数上限
+     */
+    public int capacity() {
+        return virtualExecutor == null ? threadPoolExecutor.getMaximumPoolSize() : maxInFlight;
+    }
+
+    /**
+     * 是否正在关闭
+     */
+    public boolean isShutdown() {
+        return virtualExecutor == null ? threadPoolExecutor.isShutdown() : virtualExecutor.isShutdown();
+    }
+
+    /**
+     * 执行器指标
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> executor = new LinkedHashMap<>();
+        if (virtualExecutor == null) {
+            executor.put("mode", "platform");
+            executor.put("active", threadPoolExecutor.getActiveCount());
+            executor.put("queued", threadPoolExecutor.getQueue().size());
+        } else {
+            executor.put("mode", MODE_VIRTUAL);
+            executor.put("inFlight", maxInFlight - permits.availablePermits());
+            executor.put("maxInFlight", maxInFlight);
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,228 @@
+package com.luoying.core.cache;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 编译缓存
+ * 以 (沙箱, 编译命令, 代码) 的 SHA-256 为键，把编译产物（class 文件、可执行文件等）保存在磁盘上，
+ * 相同的代码再次提交（重判、比赛中重复提交）时直接复制产物，跳过编译；
+ * 缓存总大小超过上限时按最近最少使用淘汰
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class CompileCache {
+    // 编译命令中用户代码目录的占位符（每次提交的目录不同，不参与计算键）
+    private static final String DIR_PLACEHOLDER = "{dir}";
+
+    // 是否启用
+    @Value("${sandbox.compile-cache.enabled:true}")
+    private boolean enabled;
+
+    // 缓存目录
+    @Value("${sandbox.compile-cache.dir:${user.dir}/compileCache}")
+    private String cacheDir;
+
+    // 缓存总大小上限 byte
+    @Value("${sandbox.compile-cache.max-size:1073741824}")
+    private long maxSize;
+
+    // 键 -> 缓存大小（按访问顺序排列，队头为最近最少使用）
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 缓存总大小
+    private long totalSize;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * 加载已有的缓存（按修改时间恢复访问顺序）
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        File[] dirs = FileUtil.mkdir(cacheDir).listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs, Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File dir : dirs) {
+                if (dir.getName().startsWith(".")) {
+                    // 未写完或待删除的临时目录
+                    FileUtil.del(dir);
+                    continue;
+                }
+                long size = FileUtil.size(dir);
+                entries.put(dir.getName(), size);
+                totalSize += size;
+            }
+            evict();
+        }
+        log.info("编译缓存加载完成，缓存数量：{}，总大小：{}", entries.size(), totalSize);
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param sandbox           沙箱（区分语言以及运行环境）
+     * @param compileCmd        编译命令
+     * @param userCodeParentDir 用户代码目录
+     * @param code              代码
+     * @return 缓存键
+     */
+    public String key(String sandbox, String compileCmd, File userCodeParentDir, String code) {
+        return key(sandbox, compileCmd, "", userCodeParentDir, code);
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param sandbox           沙箱（区分语言以及运行环境）
+     * @param compileCmd        编译命令
+     * @param compileOptions    编译命令之外影响编译产物的选项（例如进程内编译器的 --release）
+     * @param userCodeParentDir 用户代码目录
+     * @param code              代码
+     * @return 缓存键
+     */
+    public String key(String sandbox, String compileCmd, String compileOptions, File userCodeParentDir, String code) {
+        String normalizedCmd = compileCmd.replace(userCodeParentDir.getAbsolutePath(), DIR_PLACEHOLDER);
+        return DigestUtil.sha256Hex(sandbox + "\0" + normalizedCmd + "\0" + compileOptions + "\0" + code);
+    }
+
+    /**
+     * 命中时把编译产物复制到用户代码目录
+     *
+     * @param key               缓存键
+     * @param userCodeParentDir 用户代码目录
+     * @return 是否命中
+     */
+    public boolean restore(String key, File userCodeParentDir) {
+        if (!enabled) {
+            return false;
+        }
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                missCount++;
+                return false;
+            }
+        }
+        File entryDir = new File(cacheDir, key);
+        try {
+            // 复制而不是硬链接：用户程序对挂载目录有写权限，不能让它改到缓存
+            copyDir(entryDir, userCodeParentDir, null);
+            entryDir.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            // 缓存可能刚好被淘汰，重新编译
+            log.info("读取编译缓存失败 key={}", key);
+            synchronized (this) {
+                missCount++;
+            }
+            return false;
+        }
+        synchronized (this) {
+            hitCount++;
+        }
+        return true;
+    }
+
+    /**
+     * 保存编译产物（用户代码目录中除代码文件以外的文件）
+     *
+     * @param key               缓存键
+     * @param userCodeParentDir 用户代码目录
+     * @param codeFileName      代码文件名
+     */
+    public void store(String key, File userCodeParentDir, String codeFileName) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return;
+            }
+        }
+        // 先写入临时目录，再重命名，避免读到不完整的缓存
+        File tempDir = new File(cacheDir, "." + key + "-" + UUID.randomUUID());
+        File entryDir = new File(cacheDir, key);
+        try {
+            copyDir(userCodeParentDir, tempDir, codeFileName);
+            long size = FileUtil.size(tempDir);
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    FileUtil.del(tempDir);
+                    return;
+                }
+                Files.move(tempDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                entries.put(key, size);
+                totalSize += size;
+                evict();
+            }
+        } catch (IOException e) {
+            log.error("保存编译缓存失败 key={}", key, e);
+            FileUtil.del(tempDir);
+        }
+    }
+
+    /**
+     * 缓存统计
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("entries", entries.size());
+        snapshot.put("totalSize", totalSize);
+        snapshot.put("hits", hitCount);
+        snapshot.put("misses", missCount);
+        return snapshot;
+    }
+
+    /**
+     * 淘汰最近最少使用的缓存，直到总大小不超过上限（调用方持有锁）
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            totalSize -= entry.getValue();
+            // 先重命名再删除，正在复制的请求会失败并回退到编译
+            File entryDir = new File(cacheDir, entry.getKey());
+            File trashDir = new File(cacheDir, "." + entry.getKey() + "-deleted");
+            FileUtil.del(entryDir.renameTo(trashDir) ? trashDir : entryDir);
+            log.info("淘汰编译缓存 key={}", entry.getKey());
+        }
+    }
+
+    /**
+     * 复制目录下的文件（只复制第一层文件，编译产物都在用户代码目录下）
+     */
+    private static void copyDir(File source, File target, String excludeFileName) throws IOException {
+        File[] files = source.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("目录不存在：" + source);
+        }
+        Files.createDirectories(target.toPath());
+        for (File file : files) {
+            if (file.getName().equals(excludeFileName)) {
+                continue;
+            }
+            Files.copy(file.toPath(), new File(target, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+}
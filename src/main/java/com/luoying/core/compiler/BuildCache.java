@@ -0,0 +1,196 @@
+package com.luoying.core.compiler;
+
+import cn.hutool.core.io.FileUtil;
+import com.luoying.model.ExecuteMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.luoying.core.template.DockerCodeSandBoxTemplate.topDirPath;
+
+/**
+ * Go、Rust 编译缓存以及编译配置
+ * Go：所有提交共用一个持久化的 GOCACHE，标准库只需编译一次；启动时在后台预热常用的包
+ * Rust：通过编译配置（优化级别、代码生成单元数）在编译速度与运行速度之间取舍，增量编译的结果保存在持久化的目录中
+ * 缓存目录由定时任务控制大小，超过上限时删除最久未使用的文件（Rust 按增量编译的会话目录整体删除）
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class BuildCache {
+    // 缓存目录
+    @Value("${sandbox.build-cache.dir:${user.dir}/buildCache}")
+    private String cacheDir;
+
+    // 缓存总大小上限 byte
+    @Value("${sandbox.build-cache.max-size:2147483648}")
+    private long maxSize;
+
+    // 检查缓存大小的间隔 ms
+    @Value("${sandbox.build-cache.trim-interval:600000}")
+    private long trimInterval;
+
+    // go build 的附加参数
+    @Value("${sandbox.build-cache.go.flags:-trimpath}")
+    private String goFlags;
+
+    // rustc 的优化级别（0 编译最快，3 运行最快）
+    @Value("${sandbox.build-cache.rust.opt-level:1}")
+    private String rustOptLevel;
+
+    // rustc 的代码生成单元数（越大编译并行度越高，运行速度略低）
+    @Value("${sandbox.build-cache.rust.codegen-units:16}")
+    private int rustCodegenUnits;
+
+    // 是否启用 rustc 的增量编译缓存
+    @Value("${sandbox.build-cache.rust.incremental:true}")
+    private boolean rustIncremental;
+
+    // 编译执行器
+    @Resource
+    private CompileExecutor compileExecutor;
+
+    private final ScheduledExecutorService trimmer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "build-cache-trimmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        FileUtil.mkdir(getGoCacheDir());
+        FileUtil.mkdir(getRustCacheDir());
+        trimmer.scheduleWithFixedDelay(this::trim, trimInterval, trimInterval, TimeUnit.MILLISECONDS);
+        // 后台预热 Go 标准库中常用的包
+        trimmer.execute(this::warmUpGo);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        trimmer.shutdownNow();
+    }
+
+    /**
+     * Go 编译时的环境变量
+     */
+    public Map<String, String> goEnv() {
+        return Collections.singletonMap("GOCACHE", getGoCacheDir());
+    }
+
+    /**
+     * go build 的附加参数
+     */
+    public String goFlags() {
+        return goFlags;
+    }
+
+    /**
+     * rustc 的附加参数
+     */
+    public String rustFlags() {
+        String flags = String.format("-C opt-level=%s -C codegen-units=%d", rustOptLevel, rustCodegenUnits);
+        if (rustIncremental) {
+            // 编译容器按宿主机上的路径挂载缓存目录
+            flags += " -C incremental=" + getRustCacheDir();
+        }
+        return flags;
+    }
+
+    private String getGoCacheDir() {
+        return cacheDir + File.separator + "go";
+    }
+
+    private String getRustCacheDir() {
+        return cacheDir + File.separator + "rust";
+    }
+
+    private void warmUpGo() {
+        // 在用户代码目录下预热，编译容器中也能访问
+        File dir = new File(System.getProperty("user.dir") + File.separator + topDirPath, "go-warm-up-" + UUID.randomUUID());
+        try {
+            File source = FileUtil.writeString("package main\n\n" +
+                    "import (\n\t\"bufio\"\n\t\"fmt\"\n\t\"math\"\n\t\"os\"\n\t\"sort\"\n\t\"strconv\"\n\t\"strings\"\n)\n\n" +
+                    "func main() {\n" +
+                    "\treader := bufio.NewReader(os.Stdin)\n" +
+                    "\tline, _ := reader.ReadString('\\n')\n" +
+                    "\tfields := strings.Fields(line)\n" +
+                    "\tsort.Strings(fields)\n" +
+                    "\tn, _ := strconv.Atoi(fields[0])\n" +
+                    "\tfmt.Println(math.Sqrt(float64(n)))\n" +
+                    "}\n", new File(dir, "main.go"), StandardCharsets.UTF_8);
+            String compileCmd = String.format("go build %s -o %s %s", goFlags, new File(dir, "main").getAbsolutePath(), source.getAbsolutePath());
+            ExecuteMessage executeMessage = compileExecutor.compile(compileCmd, goEnv());
+            log.info("Go 编译缓存预热{} 耗时:{}ms", executeMessage.getExitValue() == 0 ? "完成" : "失败", executeMessage.getTime());
+        } catch (Exception e) {
+            // 没有安装 Go 时忽略
+            log.warn("Go 编译缓存预热失败:{}", e.getMessage());
+        } finally {
+            FileUtil.del(dir);
+        }
+    }
+
+    /**
+     * 缓存超过上限时，按最后修改时间删除最旧的缓存项，直到低于上限的 80%
+     * （Go 使用缓存时会更新文件的修改时间，缺失的缓存项会重新编译；
+     * Rust 的缓存项为 rust/crate名-hash/会话 目录，目录中的文件相互依赖，整体删除后下次重新编译）
+     */
+    void trim() {
+        Path root = Paths.get(cacheDir);
+        Path rustRoot = Paths.get(getRustCacheDir());
+        try (Stream<Path> stream = Files.walk(root)) {
+            // 缓存项 -> {大小, 最后修改时间}
+            Map<Path, long[]> entries = new HashMap<>();
+            stream.filter(Files::isRegularFile).forEach(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    Path entry = path;
+                    if (path.startsWith(rustRoot) && rustRoot.relativize(path).getNameCount() > 2) {
+                        entry = rustRoot.resolve(rustRoot.relativize(path).subpath(0, 2));
+                    }
+                    long[] stat = entries.computeIfAbsent(entry, key -> new long[2]);
+                    stat[0] += attributes.size();
+                    stat[1] = Math.max(stat[1], attributes.lastModifiedTime().toMillis());
+                } catch (IOException e) {
+                    // 文件已被删除
+                }
+            });
+            long totalSize = entries.values().stream().mapToLong(stat -> stat[0]).sum();
+            if (totalSize <= maxSize) {
+                return;
+            }
+            List<Map.Entry<Path, long[]>> sorted = new ArrayList<>(entries.entrySet());
+            sorted.sort(Comparator.comparingLong(entry -> entry.getValue()[1]));
+            long target = maxSize / 10 * 8;
+            int deleted = 0;
+            for (Map.Entry<Path, long[]> entry : sorted) {
+                if (totalSize <= target) {
+                    break;
+                }
+                if (FileUtil.del(entry.getKey().toFile())) {
+                    totalSize -= entry.getValue()[0];
+                    deleted++;
+                }
+            }
+            log.info("清理编译缓存，删除缓存项数：{}，剩余大小：{}", deleted, totalSize);
+        } catch (Exception e) {
+            log.error("清理编译缓存失败", e);
+        }
+    }
+}
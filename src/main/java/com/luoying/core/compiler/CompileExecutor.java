@@ -0,0 +1,179 @@
+package com.luoying.core.compiler;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import com.luoying.core.pool.ContainerLease;
+import com.luoying.core.pool.ContainerPool;
+import com.luoying.model.ExecuteMessage;
+import com.luoying.utils.BoundedOutputBuffer;
+import com.luoying.utils.ProcessUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编译执行器
+ * 启用编译容器池时，编译命令在编译容器中执行（资源、并发数与运行容器分开限制）；
+ * 编译容器按宿主机上的路径挂载用户代码目录，编译命令不需要转换，编译产物直接供运行容器使用；
+ * 未启用时在宿主机上执行
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class CompileExecutor {
+    // 编译输出上限 byte（超出的部分丢弃）
+    private static final long COMPILE_OUTPUT_LIMIT = 1024 * 1024L;
+
+    @Resource
+    private DockerClient dockerClient;
+
+    // 编译容器池（未启用时为 null）
+    @Autowired(required = false)
+    private ContainerPool compileContainerPool;
+
+    // 编译超时时间 ms
+    @Value("${sandbox.compile-pool.timeout:30000}")
+    private long timeout;
+
+    /**
+     * 是否在编译容器中编译
+     */
+    public boolean isInContainer() {
+        return compileContainerPool != null;
+    }
+
+    /**
+     * 编译代码
+     *
+     * @param compileCmd 编译命令
+     * @param env        附加的环境变量，可以为 null
+     * @return {@link ExecuteMessage}
+     */
+    public ExecuteMessage compile(String compileCmd, Map<String, String> env) {
+        if (isInContainer()) {
+            return compileInContainer(compileCmd, env);
+        }
+        return compileOnHost(compileCmd, env);
+    }
+
+    /**
+     * 在宿主机上编译
+     */
+    private ExecuteMessage compileOnHost(String compileCmd, Map<String, String> env) {
+        try {
+            // 编译器的错误输出合并到标准输出，返回编译结果
+            return ProcessUtil.runCmdAndGetMessage(compileCmd, env, "编译");
+        } catch (Exception e) {
+            log.error("compile Exception:{}", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 在编译容器中编译
+     */
+    private ExecuteMessage compileInContainer(String compileCmd, Map<String, String> env) {
+        ContainerLease lease = null;
+        BoundedOutputBuffer message = BoundedOutputBuffer.obtain(COMPILE_OUTPUT_LIMIT);
+        BoundedOutputBuffer errorMessage = BoundedOutputBuffer.obtain(COMPILE_OUTPUT_LIMIT);
+        try {
+            lease = compileContainerPool.acquire();
+            // 与 Runtime.exec 一样按空白字符拆分命令
+            StringTokenizer tokenizer = new StringTokenizer(compileCmd);
+            String[] command = new String[tokenizer.countTokens()];
+            for (int i = 0; tokenizer.hasMoreTokens(); i++) {
+                command[i] = tokenizer.nextToken();
+            }
+            // 根文件系统只读，编译器的临时文件写在 /tmp
+            Map<String, String> execEnv = new LinkedHashMap<>();
+            execEnv.put("HOME", "/tmp");
+            execEnv.put("TMPDIR", "/tmp");
+            if (env != null) {
+                execEnv.putAll(env);
+            }
+            ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(lease.getContainerId()).withCmd(command).withEnv(toEnvList(execEnv))
+                    .withAttachStdout(true).withAttachStderr(true).exec();
+            log.info("创建编译命令：" + compileCmd);
+            ResultCallback.Adapter<Frame> callback = new ResultCallback.Adapter<Frame>() {
+                @Override
+                public void onNext(Frame frame) {
+                    (StreamType.STDERR.equals(frame.getStreamType()) ? errorMessage : message).write(frame.getPayload());
+                }
+            };
+            StopWatch watch = new StopWatch();
+            watch.start();
+            boolean completed = dockerClient.execStartCmd(execCreateCmdResponse.getId()).exec(callback).awaitCompletion(timeout, TimeUnit.MILLISECONDS);
+            watch.stop();
+            ExecuteMessage executeMessage = new ExecuteMessage();
+            executeMessage.setTime(watch.getLastTaskTimeMillis());
+            if (!completed) {
+                // 编译进程仍在容器内运行，归还时需要重启容器
+                lease.markBroken();
+                callback.close();
+                executeMessage.setExitValue(-1);
+                executeMessage.setErrorMessage("编译超时");
+                return executeMessage;
+            }
+            Long exitCode = dockerClient.inspectExecCmd(execCreateCmdResponse.getId()).exec().getExitCodeLong();
+            int exitValue = exitCode == null ? -1 : exitCode.intValue();
+            executeMessage.setExitValue(exitValue);
+            if (exitValue == 0) {
+                log.info("编译成功");
+                executeMessage.setMessage(message.toString(true));
+            } else {
+                log.error("编译失败，错误码为: {}", exitValue);
+                String error = errorMessage.toString(true);
+                // 编译器没有错误输出时（例如被信号终止）也要能判断出编译失败
+                executeMessage.setErrorMessage(error.trim().isEmpty() ? "编译失败，退出码：" + exitValue : error);
+            }
+            return executeMessage;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            log.error("compile Exception:{}", e);
+            if (lease != null) {
+                lease.markBroken();
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        } finally {
+            message.recycle();
+            errorMessage.recycle();
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * 编译容器池的状态（未启用时返回 null）
+     */
+    public Map<String, Object> snapshot() {
+        if (!isInContainer()) {
+            return null;
+        }
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("size", compileContainerPool.getSize());
+        pool.put("idle", compileContainerPool.getIdleCount());
+        pool.put("waiting", compileContainerPool.getWaitingCount());
+        return pool;
+    }
+
+    private static List<String> toEnvList(Map<String, String> env) {
+        List<String> envList = new ArrayList<>();
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            envList.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return envList;
+    }
+}
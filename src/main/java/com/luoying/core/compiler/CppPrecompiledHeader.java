@@ -0,0 +1,144 @@
+package com.luoying.core.compiler;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import com.luoying.model.ExecuteMessage;
+import com.luoying.utils.ProcessUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * C++ 预编译头文件
+ * 启动时在后台为常用头文件（默认 bits/stdc++.h）生成 .gch，编译用户代码时通过 -I 引入，
+ * g++ 在包含同名头文件时会优先使用预编译的版本，省去解析整个标准库的时间；
+ * 编译选项与预编译时不一致时 g++ 会忽略 .gch，继续使用系统头文件
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class CppPrecompiledHeader {
+    /**
+     * 编译选项（用户代码和预编译头文件必须使用相同的选项）
+     */
+    public static final String FLAGS = "-finput-charset=UTF-8 -fexec-charset=UTF-8";
+
+    // 是否启用
+    @Value("${sandbox.cpp.pch.enabled:true}")
+    private boolean enabled;
+
+    // 预编译头文件目录
+    @Value("${sandbox.cpp.pch.dir:${user.dir}/pch}")
+    private String pchDir;
+
+    // 需要预编译的头文件
+    @Value("${sandbox.cpp.pch.headers:bits/stdc++.h}")
+    private List<String> headers;
+
+    // 镜像内的预编译头文件目录（镜像构建时生成，在编译容器中编译时使用）
+    @Value("${sandbox.cpp.pch.image-dir:/opt/pch}")
+    private String imagePchDir;
+
+    // 编译执行器
+    @Resource
+    private CompileExecutor compileExecutor;
+
+    // 是否已生成
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::build, "cpp-pch-builder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 获取引入预编译头文件的编译选项（在宿主机上编译），未生成时返回空字符串
+     */
+    public String includeOption() {
+        return ready ? " -I " + pchDir : "";
+    }
+
+    /**
+     * 获取引入预编译头文件的编译选项（Docker 沙箱）
+     * 在编译容器中编译时使用镜像内的预编译头文件（.gch 与编译器版本绑定，不能使用宿主机上生成的）
+     */
+    public String dockerIncludeOption() {
+        if (compileExecutor.isInContainer()) {
+            return enabled ? " -I " + imagePchDir : "";
+        }
+        return includeOption();
+    }
+
+    /**
+     * 生成预编译头文件（编译器版本和编译选项没有变化时复用已有的）
+     */
+    private void build() {
+        try {
+            String stamp = FLAGS + "\n" + RuntimeUtil.execForStr("g++ -dumpfullversion").trim();
+            boolean built = true;
+            for (String header : headers) {
+                built &= build(header, stamp);
+            }
+            ready = built;
+            log.info("C++ 预编译头文件{} dir={}", built ? "可用" : "生成失败", pchDir);
+        } catch (Exception e) {
+            log.error("生成 C++ 预编译头文件失败", e);
+        }
+    }
+
+    private boolean build(String header, String stamp) throws Exception {
+        File gch = new File(pchDir, header + ".gch");
+        File stampFile = new File(pchDir, header + ".stamp");
+        if (gch.exists() && stampFile.exists() && stamp.equals(FileUtil.readString(stampFile, StandardCharsets.UTF_8))) {
+            return true;
+        }
+        String headerPath = findHeader(header);
+        if (headerPath == null) {
+            log.warn("找不到头文件 {}", header);
+            return false;
+        }
+        // 先生成临时文件再重命名，避免编译用户代码时读到不完整的 .gch
+        File temp = new File(pchDir, header + ".gch.tmp");
+        FileUtil.mkParentDirs(temp);
+        ExecuteMessage executeMessage = ProcessUtil.runCmdAndGetMessage(String.format("g++ %s -x c++-header %s -o %s", FLAGS, headerPath, temp.getAbsolutePath()), null, "预编译头文件");
+        if (executeMessage.getExitValue() != 0) {
+            FileUtil.del(temp);
+            return false;
+        }
+        FileUtil.rename(temp, gch.getName(), true);
+        FileUtil.writeString(stamp, stampFile, StandardCharsets.UTF_8);
+        log.info("生成预编译头文件 {} 耗时:{}ms", gch.getAbsolutePath(), executeMessage.getTime());
+        return true;
+    }
+
+    /**
+     * 通过 g++ -M 找到头文件的实际路径
+     */
+    private static String findHeader(String header) throws Exception {
+        File source = File.createTempFile("pch", ".cpp");
+        try {
+            FileUtil.writeString("#include <" + header + ">\n", source, StandardCharsets.UTF_8);
+            String dependencies = RuntimeUtil.execForStr("g++ " + FLAGS + " -M " + source.getAbsolutePath());
+            for (String dependency : dependencies.replace("\\", " ").split("\\s+")) {
+                if (dependency.endsWith("/" + header)) {
+                    return dependency;
+                }
+            }
+            return null;
+        } finally {
+            FileUtil.del(source);
+        }
+    }
+}
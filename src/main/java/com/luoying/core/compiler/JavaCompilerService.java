@@ -0,0 +1,220 @@
+package com.luoying.core.compiler;
+
+import cn.hutool.core.io.FileUtil;
+import com.luoying.model.ExecuteMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.lang.model.SourceVersion;
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内 Java 编译服务
+ * 在沙箱服务中常驻 {@link JavaCompiler}，直接从内存中的源码编译到用户代码目录，
+ * 省去每次提交启动 javac 进程以及 JIT 预热的开销；同时编译的数量受信号量限制
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class JavaCompilerService {
+    // 是否启用（关闭或运行在 JRE 上时退回 javac 进程）
+    @Value("${sandbox.java-compiler.enabled:true}")
+    private boolean enabled;
+
+    // 最大同时编译数
+    @Value("${sandbox.java-compiler.max-concurrent:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int maxConcurrent;
+
+    // 获取编译许可的最大等待时间 ms
+    @Value("${sandbox.java-compiler.acquire-timeout:30000}")
+    private long acquireTimeout;
+
+    private JavaCompiler compiler;
+
+    private Semaphore permits;
+
+    // 目标版本 -> 空闲的文件管理器（数量不超过最大同时编译数）
+    private final ConcurrentHashMap<String, Deque<StandardJavaFileManager>> fileManagers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+        if (!enabled) {
+            return;
+        }
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            log.warn("当前运行环境没有 Java 编译器（JRE），使用 javac 进程编译");
+            return;
+        }
+        // 后台预热编译器，避免第一次提交承担类加载和 JIT 的开销
+        Thread warmUp = new Thread(this::warmUp, "java-compiler-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Deque<StandardJavaFileManager> pool : fileManagers.values()) {
+            for (StandardJavaFileManager fileManager : pool) {
+                try {
+                    fileManager.close();
+                } catch (IOException e) {
+                    log.error("关闭文件管理器失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否可用
+     */
+    public boolean isAvailable() {
+        return compiler != null;
+    }
+
+    /**
+     * 编译代码，class 文件输出到代码文件所在目录
+     *
+     * @param codeFile 代码文件
+     * @param code     代码
+     * @param release  目标 Java 版本（例如容器内的 JDK 版本），为空时使用当前 JDK 的版本
+     * @return {@link ExecuteMessage}，编译失败时 errorMessage 的格式与 javac 一致（路径/Main.java:行号: error: 信息）
+     */
+    public ExecuteMessage compile(File codeFile, String code, Integer release) {
+        ExecuteMessage executeMessage = new ExecuteMessage();
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                throw new RuntimeException("获取编译许可超时");
+            }
+            long start = System.currentTimeMillis();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            // 文件管理器不是线程安全的，从池中取出独占使用，复用其中缓存的 JDK 类索引
+            Deque<StandardJavaFileManager> pool = fileManagers.computeIfAbsent(String.valueOf(release), key -> new ConcurrentLinkedDeque<>());
+            StandardJavaFileManager fileManager = pool.pollFirst();
+            if (fileManager == null) {
+                fileManager = compiler.getStandardFileManager(null, Locale.getDefault(), StandardCharsets.UTF_8);
+            }
+            boolean reusable = false;
+            try {
+                File outputDir = codeFile.getParentFile();
+                fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(outputDir));
+                JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options(outputDir, release), null,
+                        Collections.singletonList(new SourceFile(codeFile, code)));
+                boolean success = task.call();
+                executeMessage.setExitValue(success ? 0 : 1);
+                if (!success) {
+                    executeMessage.setErrorMessage(format(diagnostics.getDiagnostics()));
+                }
+                reusable = true;
+            } finally {
+                if (reusable) {
+                    pool.offerFirst(fileManager);
+                } else {
+                    fileManager.close();
+                }
+            }
+            executeMessage.setTime(System.currentTimeMillis() - start);
+            return executeMessage;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            log.error("compile Exception:{}", e);
+            throw new RuntimeException(e);
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    private static List<String> options(File outputDir, Integer release) {
+        List<String> options = new ArrayList<>();
+        // 不执行注解处理器（服务类路径上的 lombok 等不能作用于用户代码）
+        options.add("-proc:none");
+        // 用户代码只能访问 JDK 和自己的类，不能访问沙箱服务的类
+        options.add("-classpath");
+        options.add(outputDir.getAbsolutePath());
+        // --release 从 JDK 9 开始支持
+        if (release != null && SourceVersion.latest().ordinal() > SourceVersion.RELEASE_8.ordinal()) {
+            options.add("--release");
+            options.add(String.valueOf(release));
+        }
+        return options;
+    }
+
+    /**
+     * 按 javac 的格式输出错误信息
+     */
+    private static String format(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        StringBuilder errorMessage = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+                continue;
+            }
+            if (diagnostic.getSource() != null) {
+                errorMessage.append(new File(diagnostic.getSource().toUri()).getPath()).append(':').append(diagnostic.getLineNumber()).append(": ");
+            }
+            errorMessage.append("error: ").append(diagnostic.getMessage(Locale.getDefault())).append('\n');
+        }
+        return errorMessage.toString();
+    }
+
+    private void warmUp() {
+        File dir = null;
+        try {
+            dir = Files.createTempDirectory("java-compiler-warm-up").toFile();
+            File codeFile = new File(dir, "Main.java");
+            String code = "import java.util.*;\n" +
+                    "public class Main {\n" +
+                    "    public static void main(String[] args) {\n" +
+                    "        Scanner scanner = new Scanner(System.in);\n" +
+                    "        System.out.println(scanner.nextInt() + scanner.nextInt());\n" +
+                    "    }\n" +
+                    "}";
+            for (int i = 0; i < 3; i++) {
+                compile(codeFile, code, null);
+            }
+            log.info("Java 编译器预热完成");
+        } catch (Exception e) {
+            log.warn("Java 编译器预热失败", e);
+        } finally {
+            if (dir != null) {
+                FileUtil.del(dir);
+            }
+        }
+    }
+
+    /**
+     * 内存中的源码
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String code;
+
+        SourceFile(File codeFile, String code) {
+            super(codeFile.toURI(), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+}
@@ -2,32 +2,54 @@ package com.luoying.core.docker;
 
 import com.luoying.core.template.DockerCodeSandBoxTemplate;
 import com.luoying.model.enums.QuestionSubmitLanguageEnum;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
 
 /**
  * @author 落樱的悔恨
  * Docker代码沙箱工厂
  */
+@Component
 public class DockerCodeSandboxFactory {
+    @Resource
+    private JavaDockerCodeSandBox javaDockerCodeSandBox;
+
+    @Resource
+    private CppDockerCodeSandBox cppDockerCodeSandBox;
+
+    @Resource
+    private PythonDockerCodeSandBox pythonDockerCodeSandBox;
+
+    @Resource
+    private GoDockerCodeSandBox goDockerCodeSandBox;
+
+    @Resource
+    private JavaScriptDockerCodeSandBox javaScriptDockerCodeSandBox;
+
+    @Resource
+    private RustDockerCodeSandBox rustDockerCodeSandBox;
+
     /**
      * 根据编程语言获取对应的代码沙箱
      *
      * @param language 编程语言
      */
-    public static DockerCodeSandBoxTemplate getInstance(QuestionSubmitLanguageEnum language) {
+    public DockerCodeSandBoxTemplate getInstance(QuestionSubmitLanguageEnum language) {
         if (QuestionSubmitLanguageEnum.JAVA.equals(language)) {// java
-            return new JavaDockerCodeSandBox();
+            return javaDockerCodeSandBox;
         } else if (QuestionSubmitLanguageEnum.CPLUSPLUS.equals(language)) {// cpp
-            return new CppDockerCodeSandBox();
+            return cppDockerCodeSandBox;
         } else if (QuestionSubmitLanguageEnum.PYTHON.equals(language)) {// python
-            return new PythonDockerCodeSandBox();
+            return pythonDockerCodeSandBox;
         } else if (QuestionSubmitLanguageEnum.GOLANG.equals(language)) {// go
-            return new GoDockerCodeSandBox();
+            return goDockerCodeSandBox;
         } else if (QuestionSubmitLanguageEnum.JAVASCRIPT.equals(language)) {// js
-            return new JavaScriptDockerCodeSandBox();
+            return javaScriptDockerCodeSandBox;
         } else if (QuestionSubmitLanguageEnum.RUST.equals(language)) {// rust
-            return new RustDockerCodeSandBox();
+            return rustDockerCodeSandBox;
         } else {
             throw new RuntimeException("暂不支持");
         }
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,14 @@
 package com.luoying.core.docker;
 
+import com.luoying.core.compiler.BuildCache;
 import com.luoying.core.template.DockerCodeSandBoxTemplate;
 import com.luoying.model.CodeSandBoxCmd;
+import com.luoying.model.ExecuteMessage;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
 import java.io.File;
+import java.util.Collections;
 
 /**
  * @author 落樱的悔恨
@@ -15,6 +19,10 @@ public class GoDockerCodeSandBox extends DockerCodeSandBoxTemplate {
     // 代码文件名
     private static final String CODE_FILE_NAME = "main.go";
 
+    // 编译缓存以及编译配置
+    @Resource
+    private BuildCache buildCache;
+
     /**
      * 将参数提供给父类，父类进行具体处理
      */
@@ -32,9 +40,17 @@ public class GoDockerCodeSandBox extends DockerCodeSandBoxTemplate {
     @Override
     public CodeSandBoxCmd getCmd(String userCodeParentDirName, String userCodePath) {
         return CodeSandBoxCmd.builder()
-                // go build (路径/文件名.go)
-                .compileCmd(String.format("go build -o %s %s", userCodePath.substring(0, userCodePath.length() - 7), userCodePath))
+                // go build [附加参数] -o (路径/文件名) (路径/文件名.go)
+                .compileCmd(String.format("go build %s -o %s %s", buildCache.goFlags(), userCodePath.substring(0, userCodePath.length() - 7), userCodePath))
                 // ./文件名
-                .runCmd("/app/" + userCodeParentDirName + File.separator + "main").build();
+                .runArgs(Collections.singletonList("/app/" + userCodeParentDirName + File.separator + "main")).build();
+    }
+
+    /**
+     * 使用所有提交共用的 GOCACHE 编译
+     */
+    @Override
+    protected ExecuteMessage compileCode(String compileCmd, File userCodeFile, String code) {
+        return compileCode(compileCmd, buildCache.goEnv());
     }
 }
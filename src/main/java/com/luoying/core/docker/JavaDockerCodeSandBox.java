@@ -1,9 +1,21 @@
 package com.luoying.core.docker;
 
+import com.luoying.core.compiler.JavaCompilerService;
+import com.luoying.core.runner.JavaCdsArchive;
+import com.luoying.core.runner.JavaRunProfiles;
 import com.luoying.core.template.DockerCodeSandBoxTemplate;
 import com.luoying.model.CodeSandBoxCmd;
+import com.luoying.model.ExecuteCodeRequest;
+import com.luoying.model.ExecuteMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * @author 落樱的悔恨
  * Java Docker代码沙箱
@@ -13,6 +25,22 @@ public class JavaDockerCodeSandBox extends DockerCodeSandBoxTemplate {
     // 代码文件名
     private static final String CODE_FILE_NAME = "Main.java";
 
+    // 进程内的 Java 编译服务
+    @Resource
+    private JavaCompilerService javaCompilerService;
+
+    // 容器内的 JDK 版本
+    @Value("${sandbox.java-compiler.container-release:11}")
+    private Integer containerJavaRelease;
+
+    // Java 运行配置
+    @Resource
+    private JavaRunProfiles javaRunProfiles;
+
+    // Java CDS 归档
+    @Resource
+    private JavaCdsArchive javaCdsArchive;
+
     /**
      * 将参数提供给父类，父类进行具体处理
      */
@@ -29,10 +57,54 @@ public class JavaDockerCodeSandBox extends DockerCodeSandBoxTemplate {
      */
     @Override
     protected CodeSandBoxCmd getCmd(String userCodeParentDirName, String userCodePath) {
+        return getCmd(userCodeParentDirName, userCodePath, new ExecuteCodeRequest());
+    }
+
+    /**
+     * 按请求的运行配置构造执行代码的命令
+     */
+    @Override
+    protected CodeSandBoxCmd getCmd(String userCodeParentDirName, String userCodePath, ExecuteCodeRequest executeCodeRequest) {
+        String runProfile = javaRunProfiles.resolve(executeCodeRequest.getRunProfile());
+        // java -Xmx128m -Dfile.encoding=UTF-8 (CDS 归档) (运行配置) -cp (路径) 文件名
+        List<String> runArgs = new ArrayList<>(Arrays.asList("java", "-Xmx128m", "-Dfile.encoding=UTF-8"));
+        runArgs.addAll(javaCdsArchive.dockerOptions());
+        runArgs.addAll(javaRunProfiles.optionList(runProfile));
+        runArgs.addAll(Arrays.asList("-cp", "/app/" + userCodeParentDirName, "Main"));
         return CodeSandBoxCmd.builder()
                 // javac -encoding utf-8 (路径/文件名.java)
                 .compileCmd(String.format("javac -encoding utf-8 %s", userCodePath))
-                // java -Xmx256m -Dfile.encoding=UTF-8 -cp (路径) 文件名
-                .runCmd("java -Xmx128m -Dfile.encoding=UTF-8 -cp /app/" + userCodeParentDirName + " Main").build();
+                .runArgs(runArgs)
+                .runProfile(runProfile).build();
+    }
+
+    /**
+     * JVM 启动时会预留远大于堆的地址空间，不限制地址空间，堆内存由 -Xmx 限制
+     */
+    @Override
+    protected boolean limitAddressSpace() {
+        return false;
+    }
+
+    /**
+     * 进程内编译时不使用编译命令，class 文件的版本由 --release 以及编译器的版本决定
+     */
+    @Override
+    protected String compileOptions() {
+        if (javaCompilerService.isAvailable()) {
+            return "javax.tools " + System.getProperty("java.version") + " --release " + containerJavaRelease;
+        }
+        return "";
+    }
+
+    /**
+     * 优先使用进程内的编译器，class 文件的版本与容器内的 JDK 一致
+     */
+    @Override
+    protected ExecuteMessage compileCode(String compileCmd, File userCodeFile, String code) {
+        if (javaCompilerService.isAvailable()) {
+            return javaCompilerService.compile(userCodeFile, code, containerJavaRelease);
+        }
+        return super.compileCode(compileCmd, userCodeFile, code);
     }
 }
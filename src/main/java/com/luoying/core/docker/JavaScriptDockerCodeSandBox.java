@@ -5,6 +5,7 @@ import com.luoying.model.CodeSandBoxCmd;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * @author 落樱的悔恨
@@ -34,6 +35,14 @@ public class JavaScriptDockerCodeSandBox extends DockerCodeSandBoxTemplate {
         return CodeSandBoxCmd.builder()
                 .compileCmd(null)
                 // node /app/路径/文件名.js
-                .runCmd("node /app/" + userCodeParentDirName + File.separator + CODE_FILE_NAME).build();
+                .runArgs(Arrays.asList("node", "/app/" + userCodeParentDirName + File.separator + CODE_FILE_NAME)).build();
+    }
+
+    /**
+     * V8 启动时会预留大量地址空间，不限制地址空间，内存由容器的 cgroup 限制
+     */
+    @Override
+    protected boolean limitAddressSpace() {
+        return false;
     }
 }
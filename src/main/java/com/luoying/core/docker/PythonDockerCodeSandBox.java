@@ -5,6 +5,7 @@ import com.luoying.model.CodeSandBoxCmd;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * @author 落樱的悔恨
@@ -34,6 +35,6 @@ public class PythonDockerCodeSandBox extends DockerCodeSandBoxTemplate {
         return CodeSandBoxCmd.builder()
                 .compileCmd(null)
                 // python3 /app/路径/文件名.py
-                .runCmd("python3 /app/" + userCodeParentDirName + File.separator + CODE_FILE_NAME).build();
+                .runArgs(Arrays.asList("python3", "/app/" + userCodeParentDirName + File.separator + CODE_FILE_NAME)).build();
     }
 }
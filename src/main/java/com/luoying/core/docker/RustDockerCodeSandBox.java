@@ -1,10 +1,13 @@
 package com.luoying.core.docker;
 
+import com.luoying.core.compiler.BuildCache;
 import com.luoying.core.template.DockerCodeSandBoxTemplate;
 import com.luoying.model.CodeSandBoxCmd;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
 import java.io.File;
+import java.util.Collections;
 
 /**
  * @author 落樱的悔恨
@@ -15,6 +18,10 @@ public class RustDockerCodeSandBox extends DockerCodeSandBoxTemplate {
     // 代码文件名
     private static final String CODE_FILE_NAME = "main.rs";
 
+    // 编译缓存以及编译配置
+    @Resource
+    private BuildCache buildCache;
+
     /**
      * 将参数提供给父类，父类进行具体处理
      */
@@ -32,8 +39,9 @@ public class RustDockerCodeSandBox extends DockerCodeSandBoxTemplate {
     @Override
     public CodeSandBoxCmd getCmd(String userCodeParentDirName, String userCodePath) {
         return CodeSandBoxCmd.builder()
-                .compileCmd(String.format("rustc %s -o %s", userCodePath, userCodePath.substring(0, userCodePath.length() - 3)))
+                // rustc -C opt-level=优化级别 -C codegen-units=代码生成单元数 -C incremental=增量编译目录 (路径/文件名.rs) -o (路径/文件名)
+                .compileCmd(String.format("rustc %s %s -o %s", buildCache.rustFlags(), userCodePath, userCodePath.substring(0, userCodePath.length() - 3)))
                 // /app/路径/文件名.rs
-                .runCmd("/app/" + userCodeParentDirName + File.separator + "main").build();
+                .runArgs(Collections.singletonList("/app/" + userCodeParentDirName + File.separator + "main")).build();
     }
 }
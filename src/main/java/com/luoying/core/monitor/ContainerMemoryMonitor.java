@@ -0,0 +1,347 @@
+package com.luoying.core.monitor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Statistics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 容器内存监控
+ * 直接读取宿主机上容器 cgroup 的内存文件，不阻塞执行流程：
+ * 1. cgroup v2 且内核支持 memory.peak 重置：每个 exec 独立的峰值
+ * 2. cgroup v1：重置 memory.max_usage_in_bytes 后读取峰值
+ * 3. 不支持重置：由采样线程按固定间隔读取当前内存，记录最大值
+ * 4. 找不到 cgroup（例如服务本身运行在容器中）：退化为 Docker stats 流
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class ContainerMemoryMonitor {
+    @Resource
+    private DockerClient dockerClient;
+
+    @Resource
+    private ContainerStateCache containerStateCache;
+
+    // cgroup 挂载点
+    @Value("${sandbox.memory.cgroup-root:/sys/fs/cgroup}")
+    private String cgroupRoot;
+
+    // 采样间隔 ms
+    @Value("${sandbox.memory.sample-interval:10}")
+    private long sampleInterval;
+
+    // 容器id -> cgroup 目录
+    private final ConcurrentHashMap<String, Optional<CgroupDir>> cgroupDirCache = new ConcurrentHashMap<>();
+
+    // 正在采样的探针
+    private final Set<SamplingMemoryProbe> samplingProbes = ConcurrentHashMap.newKeySet();
+
+    // 采样线程（首次需要时启动）
+    private volatile ScheduledExecutorService sampler;
+
+    /**
+     * 开始监控容器内存
+     *
+     * @param containerId 容器id
+     * @return {@link MemoryProbe}
+     */
+    public MemoryProbe start(String containerId) {
+        Optional<CgroupDir> cgroupDir = cgroupDirCache.computeIfAbsent(containerId, this::findCgroupDir);
+        if (!cgroupDir.isPresent()) {
+            return new StatsMemoryProbe(containerId);
+        }
+        CgroupDir dir = cgroupDir.get();
+        try {
+            long baseline = readLong(dir.current);
+            if (dir.resetPeak()) {
+                return dir.v2 ? new ResetV2MemoryProbe(dir, baseline) : new ResetV1MemoryProbe(dir, baseline);
+            }
+            return new SamplingMemoryProbe(dir, baseline);
+        } catch (IOException e) {
+            // 容器可能被重建，下次重新查找
+            cgroupDirCache.remove(containerId);
+            log.error("读取容器内存失败 containerId={}", containerId, e);
+            return new StatsMemoryProbe(containerId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * 查找容器的 cgroup 目录
+     */
+    private Optional<CgroupDir> findCgroupDir(String containerId) {
+        String[] v2Candidates = {
+                // systemd cgroup driver
+                cgroupRoot + "/system.slice/docker-" + containerId + ".scope",
+                // cgroupfs cgroup driver
+                cgroupRoot + "/docker/" + containerId};
+        for (String candidate : v2Candidates) {
+            if (new File(candidate, "memory.current").exists()) {
+                return Optional.of(new CgroupDir(Paths.get(candidate), true));
+            }
+        }
+        String[] v1Candidates = {
+                cgroupRoot + "/memory/docker/" + containerId,
+                cgroupRoot + "/memory/system.slice/docker-" + containerId + ".scope"};
+        for (String candidate : v1Candidates) {
+            if (new File(candidate, "memory.usage_in_bytes").exists()) {
+                return Optional.of(new CgroupDir(Paths.get(candidate), false));
+            }
+        }
+        log.warn("找不到容器的cgroup目录，使用Docker stats统计内存 containerId={}", containerId);
+        return Optional.empty();
+    }
+
+    private void startSampler() {
+        if (sampler == null) {
+            synchronized (this) {
+                if (sampler == null) {
+                    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "memory-sampler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.scheduleAtFixedRate(() -> {
+                        for (SamplingMemoryProbe probe : samplingProbes) {
+                            probe.sample();
+                        }
+                    }, sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+                    sampler = executor;
+                }
+            }
+        }
+    }
+
+    private static long readLong(Path path) throws IOException {
+        String value = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        return "max".equals(value) ? Long.MAX_VALUE : Long.parseLong(value);
+    }
+
+    /**
+     * 容器 cgroup 目录
+     */
+    private static class CgroupDir {
+        private final boolean v2;
+
+        // 当前内存
+        private final Path current;
+
+        // 峰值内存
+        private final Path peak;
+
+        // 是否支持重置峰值（首次尝试后确定）
+        private volatile Boolean resettable;
+
+        CgroupDir(Path dir, boolean v2) {
+            this.v2 = v2;
+            this.current = dir.resolve(v2 ? "memory.current" : "memory.usage_in_bytes");
+            this.peak = dir.resolve(v2 ? "memory.peak" : "memory.max_usage_in_bytes");
+        }
+
+        boolean resetPeak() {
+            if (Boolean.FALSE.equals(resettable)) {
+                return false;
+            }
+            if (v2) {
+                // v2 的重置只对同一个文件描述符生效，在探针中进行
+                if (resettable == null) {
+                    try (RandomAccessFile file = new RandomAccessFile(peak.toFile(), "rw")) {
+                        file.write("reset\n".getBytes(StandardCharsets.UTF_8));
+                        resettable = true;
+                    } catch (IOException e) {
+                        // 内核版本低于 6.12 不支持重置
+                        resettable = false;
+                    }
+                }
+                return resettable;
+            }
+            try {
+                Files.write(peak, "0".getBytes(StandardCharsets.UTF_8));
+                resettable = true;
+            } catch (IOException e) {
+                resettable = false;
+            }
+            return resettable;
+        }
+    }
+
+    /**
+     * cgroup v2：通过同一个文件描述符重置并读取 memory.peak
+     */
+    private static class ResetV2MemoryProbe implements MemoryProbe {
+        private final long baseline;
+
+        private final RandomAccessFile peakFile;
+
+        ResetV2MemoryProbe(CgroupDir dir, long baseline) throws IOException {
+            this.baseline = baseline;
+            this.peakFile = new RandomAccessFile(dir.peak.toFile(), "rw");
+            peakFile.write("reset\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public long stop() {
+            try {
+                peakFile.seek(0);
+                long peak = Long.parseLong(peakFile.readLine().trim());
+                return Math.max(peak - baseline, 0) / 1024;
+            } catch (IOException e) {
+                log.error("读取memory.peak失败", e);
+                return 0L;
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                peakFile.close();
+            } catch (IOException e) {
+                log.error("关闭memory.peak失败", e);
+            }
+        }
+    }
+
+    /**
+     * cgroup v1：重置后读取 memory.max_usage_in_bytes
+     * 重置对整个容器生效，容器被租约独占，因此不会相互干扰
+     */
+    private static class ResetV1MemoryProbe implements MemoryProbe {
+        private final CgroupDir dir;
+
+        private final long baseline;
+
+        ResetV1MemoryProbe(CgroupDir dir, long baseline) {
+            this.dir = dir;
+            this.baseline = baseline;
+        }
+
+        @Override
+        public long stop() {
+            try {
+                return Math.max(readLong(dir.peak) - baseline, 0) / 1024;
+            } catch (IOException e) {
+                log.error("读取memory.max_usage_in_bytes失败", e);
+                return 0L;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 不支持重置峰值：由采样线程定期读取当前内存
+     */
+    private class SamplingMemoryProbe implements MemoryProbe {
+        private final CgroupDir dir;
+
+        private final long baseline;
+
+        private final AtomicLong max;
+
+        SamplingMemoryProbe(CgroupDir dir, long baseline) {
+            this.dir = dir;
+            this.baseline = baseline;
+            this.max = new AtomicLong(baseline);
+            samplingProbes.add(this);
+            startSampler();
+        }
+
+        void sample() {
+            try {
+                long current = readLong(dir.current);
+                max.accumulateAndGet(current, Math::max);
+            } catch (IOException e) {
+                // 容器重启期间可能读取失败，忽略
+            }
+        }
+
+        @Override
+        public long stop() {
+            sample();
+            close();
+            return Math.max(max.get() - baseline, 0) / 1024;
+        }
+
+        @Override
+        public void close() {
+            samplingProbes.remove(this);
+        }
+    }
+
+    /**
+     * 找不到 cgroup：订阅 Docker stats 流，返回已收到的统计中峰值的增量
+     * stats 大约每秒推送一次，短时间的 exec 可能统计不到
+     */
+    private class StatsMemoryProbe implements MemoryProbe {
+        private final AtomicLong max = new AtomicLong(0L);
+
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+        private final ResultCallback.Adapter<Statistics> callback;
+
+        StatsMemoryProbe(String containerId) {
+            callback = dockerClient.statsCmd(containerId).exec(new ResultCallback.Adapter<Statistics>() {
+                @Override
+                public void onNext(Statistics statistics) {
+                    // 从事件缓存获取容器状态，不额外调用 Docker API
+                    String containerStatus = containerStateCache.getState(containerId);
+                    if ("running".equalsIgnoreCase(containerStatus) && statistics.getMemoryStats().getMaxUsage() != null) {
+                        long maxUsage = statistics.getMemoryStats().getMaxUsage() / 1024;
+                        max.accumulateAndGet(maxUsage, Math::max);
+                        min.accumulateAndGet(maxUsage, Math::min);
+                    } else {
+                        log.info("容器状态:{}", containerStatus);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    log.info("内存统计异常:{}", throwable.getMessage());
+                }
+            });
+        }
+
+        @Override
+        public long stop() {
+            close();
+            return min.get() == Long.MAX_VALUE ? 0L : max.get() - min.get();
+        }
+
+        @Override
+        public void close() {
+            try {
+                callback.close();
+            } catch (IOException e) {
+                log.error("关闭内存统计失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.luoying.core.monitor;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 容器状态缓存
+ * 启动时全量加载一次，之后由 Docker events 流增量更新，查询容器状态不再需要调用 inspectContainer
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class ContainerStateCache {
+    // 事件流断开后的重新订阅间隔 ms
+    private static final long RESUBSCRIBE_DELAY = 3000L;
+
+    @Resource
+    private DockerClient dockerClient;
+
+    // 容器id -> 容器状态（created、running、paused、exited）
+    private final ConcurrentHashMap<String, String> states = new ConcurrentHashMap<>();
+
+    // 重新订阅线程
+    private final ScheduledExecutorService resubscriber = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "container-state-resubscriber");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile ResultCallback.Adapter<Event> eventsCallback;
+
+    // 是否已安排重新订阅（onError、onComplete 可能先后触发）
+    private final AtomicBoolean resubscribing = new AtomicBoolean(false);
+
+    private volatile boolean closed;
+
+    @PostConstruct
+    public void init() {
+        subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        resubscriber.shutdownNow();
+        closeEventsCallback();
+    }
+
+    /**
+     * 获取容器状态
+     *
+     * @param containerId 容器id
+     * @return 容器状态，未知的容器返回 null
+     */
+    public String getState(String containerId) {
+        return states.get(containerId);
+    }
+
+    /**
+     * 容器是否在运行
+     *
+     * @param containerId 容器id
+     */
+    public boolean isRunning(String containerId) {
+        return "running".equals(states.get(containerId));
+    }
+
+    /**
+     * 先订阅事件再全量加载，避免两者之间的状态变化丢失
+     */
+    private void subscribe() {
+        if (closed) {
+            return;
+        }
+        resubscribing.set(false);
+        try {
+            eventsCallback = dockerClient.eventsCmd().withEventTypeFilter(EventType.CONTAINER).exec(new ResultCallback.Adapter<Event>() {
+                @Override
+                public void onNext(Event event) {
+                    onEvent(event);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    log.error("容器事件流异常:{}", throwable.getMessage());
+                    scheduleResubscribe();
+                }
+
+                @Override
+                public void onComplete() {
+                    scheduleResubscribe();
+                }
+            });
+            List<Container> containers = dockerClient.listContainersCmd().withShowAll(true).exec();
+            for (Container container : containers) {
+                states.putIfAbsent(container.getId(), container.getState());
+            }
+            log.info("容器状态缓存加载完成，容器数量：{}", containers.size());
+        } catch (Exception e) {
+            log.error("订阅容器事件失败", e);
+            scheduleResubscribe();
+        }
+    }
+
+    private void scheduleResubscribe() {
+        if (closed || !resubscribing.compareAndSet(false, true)) {
+            return;
+        }
+        closeEventsCallback();
+        // 断开期间的状态不可信，重新订阅后全量加载
+        states.clear();
+        resubscriber.schedule(this::subscribe, RESUBSCRIBE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeEventsCallback() {
+        ResultCallback.Adapter<Event> callback = eventsCallback;
+        eventsCallback = null;
+        if (callback != null) {
+            try {
+                callback.close();
+            } catch (IOException e) {
+                log.error("关闭容器事件流失败", e);
+            }
+        }
+    }
+
+    private void onEvent(Event event) {
+        String containerId = event.getId();
+        String action = event.getAction() != null ? event.getAction() : event.getStatus();
+        if (containerId == null || action == null) {
+            return;
+        }
+        switch (action) {
+            case "create":
+                states.put(containerId, "created");
+                break;
+            case "start":
+            case "unpause":
+                states.put(containerId, "running");
+                break;
+            case "pause":
+                states.put(containerId, "paused");
+                break;
+            case "die":
+            case "stop":
+                states.put(containerId, "exited");
+                break;
+            case "destroy":
+                states.remove(containerId);
+                break;
+            default:
+                // exec_create、exec_start 等事件不影响容器状态
+                break;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.luoying.core.monitor;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+
+import java.io.IOException;
+
+/**
+ * 统计 Docker API 调用次数的 DockerHttpClient
+ *
+ * @Author 落樱的悔恨
+ */
+public class CountingDockerHttpClient implements DockerHttpClient {
+    private final DockerHttpClient delegate;
+
+    private final DockerApiMetrics dockerApiMetrics;
+
+    public CountingDockerHttpClient(DockerHttpClient delegate, DockerApiMetrics dockerApiMetrics) {
+        this.delegate = delegate;
+        this.dockerApiMetrics = dockerApiMetrics;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        dockerApiMetrics.recordCall(request.method(), request.path());
+        return delegate.execute(request);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,75 @@
+package com.luoying.core.monitor;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Docker API 调用统计
+ * 按接口统计调用次数，并给出平均每次提交的调用次数
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+public class DockerApiMetrics {
+    // 路径中的 API 版本号
+    private static final Pattern VERSION_PATTERN = Pattern.compile("^/v[0-9.]+");
+
+    // 路径中的容器id、exec id
+    private static final Pattern ID_PATTERN = Pattern.compile("/[0-9a-f]{12,64}(?=/|$)");
+
+    // 接口 -> 调用次数
+    private final ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    // 调用总次数
+    private final LongAdder totalCalls = new LongAdder();
+
+    // 提交次数
+    private final LongAdder submissions = new LongAdder();
+
+    /**
+     * 记录一次 Docker API 调用
+     *
+     * @param method 请求方法
+     * @param path   请求路径
+     */
+    public void recordCall(String method, String path) {
+        int queryIndex = path.indexOf('?');
+        if (queryIndex >= 0) {
+            path = path.substring(0, queryIndex);
+        }
+        path = VERSION_PATTERN.matcher(path).replaceFirst("");
+        path = ID_PATTERN.matcher(path).replaceAll("/{id}");
+        calls.computeIfAbsent(method + " " + path, key -> new LongAdder()).increment();
+        totalCalls.increment();
+    }
+
+    /**
+     * 记录一次提交
+     */
+    public void recordSubmission() {
+        submissions.increment();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long total = totalCalls.sum();
+        long submissionCount = submissions.sum();
+        snapshot.put("totalCalls", total);
+        snapshot.put("submissions", submissionCount);
+        // 包含 events 订阅、容器池维护等后台调用
+        snapshot.put("callsPerSubmission", submissionCount == 0 ? 0 : (double) total / submissionCount);
+        Map<String, Long> callMap = new TreeMap<>();
+        calls.forEach((api, count) -> callMap.put(api, count.sum()));
+        snapshot.put("calls", callMap);
+        return snapshot;
+    }
+}
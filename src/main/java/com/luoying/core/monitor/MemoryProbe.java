@@ -0,0 +1,22 @@
+package com.luoying.core.monitor;
+
+/**
+ * 内存探针
+ * 在 exec 开始前创建，结束后调用 {@link #stop()} 获取这段时间内容器的峰值内存
+ *
+ * @Author 落樱的悔恨
+ */
+public interface MemoryProbe extends AutoCloseable {
+    /**
+     * 结束采样
+     *
+     * @return 采样期间的峰值内存（相对于开始时的内存） KB
+     */
+    long stop();
+
+    /**
+     * 释放资源，未调用 {@link #stop()} 时等同于丢弃结果
+     */
+    @Override
+    void close();
+}
@@ -1,9 +1,18 @@
 package com.luoying.core.nativ;
 
+import com.luoying.core.compiler.JavaCompilerService;
+import com.luoying.core.runner.JavaCdsArchive;
+import com.luoying.core.runner.JavaForkServerPool;
+import com.luoying.core.runner.JavaRunProfiles;
 import com.luoying.model.CodeSandBoxCmd;
+import com.luoying.model.ExecuteCodeRequest;
 import com.luoying.core.template.NativeCodeSandBoxTemplate;
+import com.luoying.model.ExecuteMessage;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Resource;
+import java.io.File;
+
 /**
  * @author 落樱的悔恨
  * Java 原生代码沙箱
@@ -19,6 +28,22 @@ public class JavaNativeCodeSandBox extends NativeCodeSandBoxTemplate {
     // 代码文件名
     private static final String CODE_FILE_NAME = "Main.java";
 
+    // 进程内的 Java 编译服务
+    @Resource
+    private JavaCompilerService javaCompilerService;
+
+    // 常驻的 Java 用例执行进程
+    @Resource
+    private JavaForkServerPool javaForkServerPool;
+
+    // Java 运行配置
+    @Resource
+    private JavaRunProfiles javaRunProfiles;
+
+    // Java CDS 归档
+    @Resource
+    private JavaCdsArchive javaCdsArchive;
+
     /**
      * 将参数提供给父类，父类进行具体处理
      */
@@ -35,12 +60,63 @@ public class JavaNativeCodeSandBox extends NativeCodeSandBoxTemplate {
      */
     @Override
     protected CodeSandBoxCmd getCmd(String userCodeParentPath, String userCodePath) {
+        return getCmd(userCodeParentPath, userCodePath, new ExecuteCodeRequest());
+    }
+
+    /**
+     * 按请求的运行配置构造执行代码的命令
+     */
+    @Override
+    protected CodeSandBoxCmd getCmd(String userCodeParentPath, String userCodePath, ExecuteCodeRequest executeCodeRequest) {
+        String runProfile = javaRunProfiles.resolve(executeCodeRequest.getRunProfile());
         return CodeSandBoxCmd
                 .builder()
                 // javac -encoding utf-8 (路径/文件名.java)
                 .compileCmd(String.format("javac -encoding utf-8 %s", userCodePath))
-                // java -Xmx256m -Dfile.encoding=UTF-8 -cp (路径) 文件名
-                .runCmd(String.format("java -Xmx256m -Dfile.encoding=UTF-8 -cp %s Main", userCodeParentPath))
+                // java -Xmx256m -Dfile.encoding=UTF-8 (CDS 归档) (运行配置) -cp (路径) 文件名
+                .runCmd(String.format("java -Xmx256m -Dfile.encoding=UTF-8%s%s -cp %s Main", javaCdsArchive.nativeOption(), javaRunProfiles.options(runProfile), userCodeParentPath))
+                .runProfile(runProfile)
                 .build();
     }
+
+    /**
+     * JVM 启动时预留的地址空间远大于堆，不限制地址空间，堆内存由 -Xmx 限制
+     */
+    @Override
+    protected boolean limitAddressSpace() {
+        return false;
+    }
+
+    /**
+     * 进程内编译时不使用编译命令，class 文件的版本由编译器的版本决定
+     */
+    @Override
+    protected String compileOptions() {
+        if (javaCompilerService.isAvailable()) {
+            return "javax.tools " + System.getProperty("java.version");
+        }
+        return "";
+    }
+
+    /**
+     * 优先使用进程内的编译器
+     */
+    @Override
+    protected ExecuteMessage compileCode(String compileCmd, File userCodeFile, String code) {
+        if (javaCompilerService.isAvailable()) {
+            return javaCompilerService.compile(userCodeFile, code, null);
+        }
+        return super.compileCode(compileCmd, userCodeFile, code);
+    }
+
+    /**
+     * 优先交给常驻的执行进程运行，省去每个用例启动 JVM 的时间
+     */
+    @Override
+    protected ExecuteMessage runCode(CodeSandBoxCmd sandBoxCmd, File userCodeParentDir, String input) {
+        if (javaForkServerPool.isAvailable()) {
+            return javaForkServerPool.run(userCodeParentDir, input, TIMEOUT, outputOut * 1024, sandBoxCmd.getRunProfile());
+        }
+        return super.runCode(sandBoxCmd, userCodeParentDir, input);
+    }
 }
@@ -2,23 +2,33 @@ package com.luoying.core.nativ;
 
 import com.luoying.model.enums.QuestionSubmitLanguageEnum;
 import com.luoying.core.template.NativeCodeSandBoxTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
 
 /**
  * @author 落樱的悔恨
  * 原生代码沙箱工厂
  */
+@Component
 public class NativeCodeSandboxFactory {
+    @Resource
+    private JavaNativeCodeSandBox javaNativeCodeSandBox;
+
+    @Resource
+    private CppNativeCodeSandBox cppNativeCodeSandBox;
+
     /**
      * 根据编程语言获取对应的代码沙箱
      * @param language 编程语言
      */
-    public static NativeCodeSandBoxTemplate getInstance(QuestionSubmitLanguageEnum language) {
+    public NativeCodeSandBoxTemplate getInstance(QuestionSubmitLanguageEnum language) {
          if (QuestionSubmitLanguageEnum.JAVA.equals(language)){// java
-             return new JavaNativeCodeSandBox();
+             return javaNativeCodeSandBox;
          } else if (QuestionSubmitLanguageEnum.CPLUSPLUS.equals(language)) {// cpp
-             return new CppNativeCodeSandBox();
+             return cppNativeCodeSandBox;
          } else {
              throw new RuntimeException("暂不支持");
          }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package com.luoying.core.nativ;
+
+import com.luoying.model.ExecuteMessage;
+import com.luoying.model.enums.JudgeInfoMessagenum;
+import com.luoying.utils.ProcessUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 原生沙箱的内核资源限制
+ * 通过 util-linux 的 prlimit 在 exec 用户程序之前设置 RLIMIT_AS、RLIMIT_CPU、RLIMIT_FSIZE、RLIMIT_NPROC，
+ * 由内核直接拒绝分配或发送信号，不需要轮询；再根据退出码（128 + 信号）判定超限类型
+ * <p>
+ * RLIMIT_NPROC 按用户统计（包括线程），以 root 运行时不生效，适合以专用用户运行服务时使用
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class RlimitLauncher {
+    // 超出 CPU 时间软限制（SIGXCPU）
+    private static final int EXIT_SIGXCPU = 128 + 24;
+
+    // 超出文件大小限制（SIGXFSZ）
+    private static final int EXIT_SIGXFSZ = 128 + 25;
+
+    // 超出 CPU 时间硬限制（SIGKILL）
+    private static final int EXIT_SIGKILL = 128 + 9;
+
+    // 分配内存失败后 abort（例如 C++ 的 std::bad_alloc 未捕获）
+    private static final int EXIT_SIGABRT = 128 + 6;
+
+    // 分配内存失败后访问空指针
+    private static final int EXIT_SIGSEGV = 128 + 11;
+
+    // 看门狗的截止时间比 CPU 时间硬限制多留的时间 ms（保证硬限制先生效，两种终止方式可以区分）
+    private static final long WATCHDOG_MARGIN = 2000L;
+
+    // 是否启用
+    @Value("${sandbox.rlimit.enabled:true}")
+    private boolean enabled;
+
+    // 地址空间上限 byte（RLIMIT_AS）
+    @Value("${sandbox.rlimit.memory:268435456}")
+    private long memory;
+
+    // CPU 时间上限 s（RLIMIT_CPU，硬限制多 1 秒）
+    @Value("${sandbox.rlimit.cpu-time:5}")
+    private long cpuTime;
+
+    // 写入文件的大小上限 byte（RLIMIT_FSIZE）
+    @Value("${sandbox.rlimit.file-size:67108864}")
+    private long fileSize;
+
+    // 用户的进程（线程）数上限（RLIMIT_NPROC，0 为不限制）
+    @Value("${sandbox.rlimit.processes:0}")
+    private long processes;
+
+    private volatile boolean available;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            available = ProcessUtil.runCmdAndGetMessage("prlimit --version", null, "检查prlimit").getExitValue() == 0;
+        } catch (Exception e) {
+            log.warn("prlimit 不可用，原生沙箱不设置资源限制：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 是否可用
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * 为运行命令加上资源限制，不可用时原样返回
+     *
+     * @param runCmd             运行命令
+     * @param limitAddressSpace 是否限制地址空间（JVM 启动时会预留远大于堆的地址空间，Java 使用 -Xmx 限制）
+     * @return 运行命令
+     */
+    public String wrap(String runCmd, boolean limitAddressSpace) {
+        if (!available) {
+            return runCmd;
+        }
+        StringBuilder cmd = new StringBuilder("prlimit");
+        if (limitAddressSpace) {
+            cmd.append(" --as=").append(memory);
+        }
+        cmd.append(" --cpu=").append(cpuTime).append(':').append(cpuTime + 1);
+        cmd.append(" --fsize=").append(fileSize);
+        if (processes > 0) {
+            cmd.append(" --nproc=").append(processes);
+        }
+        return cmd.append(' ').append(runCmd).toString();
+    }
+
+    /**
+     * 为常驻进程（Java 用例执行进程）的启动命令加上资源限制，不可用时原样返回
+     * 常驻进程依次运行多个用例，RLIMIT_CPU 按进程的整个生命周期累计，上限为每个用例的 CPU 时间乘以运行的用例数，
+     * 只作为失控线程的兜底；单个用例的时间由执行进程自己限制，不限制地址空间
+     *
+     * @param command 启动命令
+     * @param runs    进程最多运行的用例数
+     * @return 启动命令
+     */
+    public List<String> wrapResident(List<String> command, int runs) {
+        if (!available) {
+            return command;
+        }
+        long residentCpuTime = cpuTime * Math.max(1, runs);
+        List<String> cmd = new ArrayList<>();
+        cmd.add("prlimit");
+        cmd.add("--cpu=" + residentCpuTime + ":" + (residentCpuTime + 1));
+        cmd.add("--fsize=" + fileSize);
+        if (processes > 0) {
+            cmd.add("--nproc=" + processes);
+        }
+        cmd.addAll(command);
+        return cmd;
+    }
+
+    /**
+     * 看门狗（墙上时间）的截止时间：启用 CPU 时间限制时明显晚于硬限制
+     *
+     * @param timeout 墙上时间限制 ms
+     * @return 截止时间 ms
+     */
+    public long watchdogTimeout(long timeout) {
+        if (!available) {
+            return timeout;
+        }
+        return Math.max(timeout, (cpuTime + 1) * 1000 + WATCHDOG_MARGIN);
+    }
+
+    /**
+     * 根据退出码判定超限类型
+     *
+     * @param executeMessage    运行结果
+     * @param limitAddressSpace 是否限制了地址空间
+     * @return 超限类型，没有超限时返回 null
+     */
+    public JudgeInfoMessagenum verdict(ExecuteMessage executeMessage, boolean limitAddressSpace) {
+        if (!available || executeMessage.getExitValue() == null) {
+            return null;
+        }
+        int exitValue = executeMessage.getExitValue();
+        String errorMessage = executeMessage.getErrorMessage() == null ? "" : executeMessage.getErrorMessage();
+        if (exitValue == EXIT_SIGXCPU) {
+            return JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED;
+        }
+        if (exitValue == EXIT_SIGKILL && exceededSoftLimit(executeMessage)) {
+            // 超过软限制后被 SIGKILL 终止，即达到了硬限制（采样的 CPU 时间会漏掉最后一个采样间隔，同时参考墙上时间）
+            return JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED;
+        }
+        if (exitValue == EXIT_SIGXFSZ) {
+            return JudgeInfoMessagenum.OUTPUT_LIMIT_EXCEEDED;
+        }
+        if (errorMessage.contains("java.lang.OutOfMemoryError")) {
+            return JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED;
+        }
+        if (limitAddressSpace && (exitValue == EXIT_SIGABRT || exitValue == EXIT_SIGSEGV)) {
+            // 分配失败时常驻内存通常已接近上限
+            Long peakMemory = executeMessage.getMemory();
+            boolean nearLimit = peakMemory != null && peakMemory * 1024 >= memory * 9 / 10;
+            if (errorMessage.contains("bad_alloc") || nearLimit) {
+                return JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 运行时间（CPU 时间或者墙上时间）是否已经超过 CPU 时间的软限制
+     */
+    private boolean exceededSoftLimit(ExecuteMessage executeMessage) {
+        long softLimit = cpuTime * 1000;
+        Long usedCpuTime = executeMessage.getCpuTime();
+        Long wallTime = executeMessage.getTime();
+        return (usedCpuTime != null && usedCpuTime >= softLimit) || (wallTime != null && wallTime >= softLimit);
+    }
+}
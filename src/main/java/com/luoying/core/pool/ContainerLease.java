@@ -0,0 +1,57 @@
+package com.luoying.core.pool;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 容器租约
+ * 持有期间独占容器，关闭时归还给容器池
+ *
+ * @Author 落樱的悔恨
+ */
+public class ContainerLease implements AutoCloseable {
+    private final ContainerPool pool;
+
+    private final PooledContainer container;
+
+    // 容器是否已被破坏（例如超时后仍有进程在运行），归还时需要重启
+    private volatile boolean broken;
+
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    ContainerLease(ContainerPool pool, PooledContainer container) {
+        this.pool = pool;
+        this.container = container;
+    }
+
+    /**
+     * 获取容器id
+     */
+    public String getContainerId() {
+        return container.getId();
+    }
+
+    /**
+     * 标记容器已被破坏，归还时由容器池重启
+     */
+    public void markBroken() {
+        this.broken = true;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    PooledContainer getContainer() {
+        return container;
+    }
+
+    /**
+     * 归还容器（重复调用只归还一次）
+     */
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(this);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.luoying.core.pool;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.HostConfig;
+import com.luoying.config.ContainerPoolProperties;
+import com.luoying.core.monitor.ContainerStateCache;
+import com.luoying.exception.ContainerAcquireTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 容器池
+ * 容器在多次提交之间保持运行，通过 {@link ContainerLease 租约} 借出和归还，
+ * 后台维护任务负责停止长时间空闲的容器以及恢复不健康的容器
+ *
+ * @Author 落樱的悔恨
+ */
+@Slf4j
+public class ContainerPool {
+    private final DockerClient dockerClient;
+
+    // 容器状态缓存（由 Docker events 更新）
+    private final ContainerStateCache containerStateCache;
+
+    private final ContainerPoolProperties properties;
+
+    // 挂载到容器内的目录
+    private final List<Bind> binds;
+
+    // 所有容器
+    private final List<PooledContainer> containers = new CopyOnWriteArrayList<>();
+
+    // 空闲容器（队头为最近归还的容器，优先借出以保证运行中的容器被复用）
+    private final LinkedBlockingDeque<PooledContainer> idleContainers = new LinkedBlockingDeque<>();
+
+    // 等待恢复的不健康容器
+    private final Set<PooledContainer> unhealthyContainers = ConcurrentHashMap.newKeySet();
+
+    // 正在等待获取容器的请求数
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    // 维护线程（空闲回收、健康检查、恢复容器）
+    private final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "container-pool-maintainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ContainerPool(DockerClient dockerClient, ContainerStateCache containerStateCache, ContainerPoolProperties properties, List<Bind> binds) {
+        this.dockerClient = dockerClient;
+        this.containerStateCache = containerStateCache;
+        this.properties = properties;
+        this.binds = binds;
+    }
+
+    /**
+     * 初始化容器池：复用已存在的同名容器，不存在则创建
+     */
+    public void init() {
+        // 获取所有容器（包括未启动的）
+        List<Container> existContainers = dockerClient.listContainersCmd().withShowAll(true).exec();
+        for (int i = 1; i <= properties.getSize(); i++) {
+            String name = properties.getNamePrefix() + i;
+            // 根据名称判断容器是否存在（容器的实际名称：/自定义名称）
+            Optional<Container> containerOptional = existContainers.stream().filter(container -> Arrays.asList(container.getNames()).contains("/" + name)).findFirst();
+            PooledContainer pooledContainer;
+            if (containerOptional.isPresent()) {
+                Container container = containerOptional.get();
+                PooledContainer.State state = "running".equals(container.getState()) ? PooledContainer.State.RUNNING : PooledContainer.State.STOPPED;
+                pooledContainer = new PooledContainer(name, container.getId(), state);
+            } else {
+                pooledContainer = new PooledContainer(name, createContainer(name), PooledContainer.State.STOPPED);
+            }
+            containers.add(pooledContainer);
+            idleContainers.offerLast(pooledContainer);
+        }
+        log.info("容器池初始化完成，容器数量：{}", containers.size());
+        long interval = properties.getMaintainInterval();
+        maintainer.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭容器池：停止维护任务以及所有容器
+     */
+    public void shutdown() {
+        maintainer.shutdownNow();
+        for (PooledContainer container : containers) {
+            stopQuietly(container);
+        }
+    }
+
+    /**
+     * 获取容器租约，没有空闲容器时等待
+     *
+     * @return {@link ContainerLease}
+     * @throws ContainerAcquireTimeoutException 等待超时
+     */
+    public ContainerLease acquire() throws InterruptedException {
+        PooledContainer container;
+        waitingCount.incrementAndGet();
+        try {
+            container = idleContainers.pollFirst(properties.getAcquireTimeout(), TimeUnit.MILLISECONDS);
+        } finally {
+            waitingCount.decrementAndGet();
+        }
+        if (container == null) {
+            throw new ContainerAcquireTimeoutException("获取容器超时");
+        }
+        return lease(container);
+    }
+
+    /**
+     * 尝试获取容器租约，没有空闲容器时不等待
+     * 有其他请求正在等待时不借出，优先满足等待中的请求
+     *
+     * @return {@link ContainerLease}，没有可借出的容器时返回 null
+     */
+    public ContainerLease tryAcquire() {
+        if (waitingCount.get() > 0) {
+            return null;
+        }
+        PooledContainer container = idleContainers.pollFirst();
+        if (container == null) {
+            return null;
+        }
+        return lease(container);
+    }
+
+    private ContainerLease lease(PooledContainer container) {
+        try {
+            ensureRunning(container);
+        } catch (Exception e) {
+            log.error("启动容器失败 name={}", container.getName(), e);
+            markUnhealthy(container);
+            throw new RuntimeException("启动容器失败", e);
+        }
+        container.markAcquired();
+        return new ContainerLease(this, container);
+    }
+
+    /**
+     * 归还容器，被破坏的容器交给维护线程重启后再放回
+     */
+    void release(ContainerLease lease) {
+        PooledContainer container = lease.getContainer();
+        if (lease.isBroken()) {
+            markUnhealthy(container);
+            maintainer.execute(() -> recover(container));
+            return;
+        }
+        container.markReleased();
+        idleContainers.offerFirst(container);
+    }
+
+    /**
+     * 容器总数
+     */
+    public int getSize() {
+        return containers.size();
+    }
+
+    /**
+     * 空闲容器数
+     */
+    public int getIdleCount() {
+        return idleContainers.size();
+    }
+
+    /**
+     * 等待获取容器的请求数
+     */
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    /**
+     * 确保容器处于运行状态
+     */
+    private void ensureRunning(PooledContainer container) {
+        // 容器可能在空闲期间退出（例如被外部停止），以事件缓存为准
+        if (PooledContainer.State.RUNNING.equals(container.getState()) && containerStateCache.isRunning(container.getId())) {
+            return;
+        }
+        try {
+            dockerClient.startContainerCmd(container.getId()).exec();
+        } catch (NotModifiedException e) {
+            // 容器已在运行
+        } catch (NotFoundException e) {
+            // 容器被外部删除，重新创建
+            container.setId(createContainer(container.getName()));
+            dockerClient.startContainerCmd(container.getId()).exec();
+        }
+        container.setState(PooledContainer.State.RUNNING);
+    }
+
+    private void markUnhealthy(PooledContainer container) {
+        container.setState(PooledContainer.State.UNHEALTHY);
+        unhealthyContainers.add(container);
+    }
+
+    /**
+     * 恢复不健康的容器：重启（清理残留进程），容器不存在则重建
+     */
+    private void recover(PooledContainer container) {
+        if (!unhealthyContainers.contains(container)) {
+            return;
+        }
+        try {
+            try {
+                dockerClient.restartContainerCmd(container.getId()).withTimeout(0).exec();
+            } catch (NotFoundException e) {
+                container.setId(createContainer(container.getName()));
+                dockerClient.startContainerCmd(container.getId()).exec();
+            }
+            container.setState(PooledContainer.State.RUNNING);
+            unhealthyContainers.remove(container);
+            container.markReleased();
+            idleContainers.offerLast(container);
+            log.info("容器恢复成功 name={}", container.getName());
+        } catch (Exception e) {
+            // 留给下一次维护任务重试
+            log.error("容器恢复失败 name={}", container.getName(), e);
+        }
+    }
+
+    /**
+     * 维护任务：恢复不健康的容器、检查空闲容器健康状态、停止长时间空闲的容器
+     */
+    private void maintain() {
+        try {
+            for (PooledContainer container : new ArrayList<>(unhealthyContainers)) {
+                recover(container);
+            }
+            int running = 0;
+            long now = System.currentTimeMillis();
+            for (PooledContainer container : new ArrayList<>(idleContainers)) {
+                if (!PooledContainer.State.RUNNING.equals(container.getState())) {
+                    continue;
+                }
+                boolean idleTimeout = now - container.getLastReleaseTime() > properties.getIdleTimeout();
+                if (idleTimeout && running >= properties.getMinRunning()) {
+                    // 从空闲队列中取出后再停止，避免与借出冲突
+                    if (idleContainers.remove(container)) {
+                        stopQuietly(container);
+                        idleContainers.offerLast(container);
+                        log.info("停止空闲容器 name={}", container.getName());
+                    }
+                    continue;
+                }
+                if (containerStateCache.isRunning(container.getId())) {
+                    running++;
+                } else {
+                    // 容器被外部停止，下次借出时重新启动
+                    container.setState(PooledContainer.State.STOPPED);
+                }
+            }
+        } catch (Exception e) {
+            log.error("容器池维护失败", e);
+        }
+    }
+
+    private void stopQuietly(PooledContainer container) {
+        try {
+            dockerClient.stopContainerCmd(container.getId()).withTimeout(0).exec();
+        } catch (NotModifiedException | NotFoundException e) {
+            // 容器已停止或不存在
+        } catch (Exception e) {
+            log.error("停止容器失败 name={}", container.getName(), e);
+        }
+        container.setState(PooledContainer.State.STOPPED);
+    }
+
+    /**
+     * 创建容器
+     *
+     * @param name 容器名称
+     * @return 容器id
+     */
+    private String createContainer(String name) {
+        HostConfig hostConfig = new HostConfig();
+        // 把 项目目录/顶级目录 挂载到 容器内的目录
+        hostConfig.withBinds(binds);
+        // 限制最大内存
+        hostConfig.withMemory(properties.getMemory());
+        // 不让内存往硬盘写
+        hostConfig.withMemorySwap(0L);
+        // cpu核心数
+        hostConfig.withCpuCount(properties.getCpuCount());
+        if (properties.getNanoCpus() > 0) {
+            // cpu时间限制
+            hostConfig.withNanoCPUs(properties.getNanoCpus());
+        }
+        if (!properties.getTmpfs().isEmpty()) {
+            // 可写的临时目录
+            hostConfig.withTmpFs(properties.getTmpfs());
+        }
+        // 根文件系统只读
+        hostConfig.withReadonlyRootfs(true);
+        // hostConfig.withSecurityOpts(Arrays.asList("seccomp=安全管理配置字符串"));
+        // 创建容器
+        CreateContainerResponse createContainerResponse = dockerClient.createContainerCmd(properties.getImageName())
+                .withName(name)
+                .withNetworkDisabled(true)
+                .withHostConfig(hostConfig)
+                .withAttachStdin(true)
+                .withAttachStdout(true)
+                .withAttachStderr(true)
+                .withTty(true)
+                .exec();
+        log.info("创建容器=>{}", createContainerResponse.toString());
+        return createContainerResponse.getId();
+    }
+}
@@ -0,0 +1,65 @@
+package com.luoying.core.pool;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 容器池中的容器
+ *
+ * @Author 落樱的悔恨
+ */
+@Getter
+public class PooledContainer {
+    /**
+     * 容器状态
+     */
+    public enum State {
+        // 运行中，可直接执行命令
+        RUNNING,
+        // 已停止，借出前需要启动
+        STOPPED,
+        // 不健康，需要重启或重建后才能再次借出
+        UNHEALTHY
+    }
+
+    /**
+     * 容器名称
+     */
+    private final String name;
+
+    /**
+     * 容器id（重建后会变化）
+     */
+    @Setter
+    private volatile String id;
+
+    /**
+     * 容器状态
+     */
+    @Setter
+    private volatile State state;
+
+    /**
+     * 最近一次归还的时间
+     */
+    private volatile long lastReleaseTime = System.currentTimeMillis();
+
+    /**
+     * 借出次数
+     */
+    private volatile long leaseCount;
+
+    PooledContainer(String name, String id, State state) {
+        this.name = name;
+        this.id = id;
+        this.state = state;
+    }
+
+    void markAcquired() {
+        leaseCount++;
+    }
+
+    void markReleased() {
+        lastReleaseTime = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,137 @@
+package com.luoying.core.runner;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import com.luoying.core.compiler.JavaCompilerService;
+import com.luoying.model.ExecuteMessage;
+import com.luoying.utils.ProcessUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Java 类数据共享（CDS）归档
+ * 用预热程序记录用户代码常用的 JDK 类，生成 CDS 归档，运行用户代码时直接映射归档中已解析的类，减少 JVM 启动时间；
+ * Docker 沙箱使用镜像构建时生成的归档，原生沙箱在启动时于后台生成；
+ * 指定的归档不存在时 JVM 不会使用任何共享归档（包括 JDK 自带的），所以原生沙箱只在生成成功后才引入
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class JavaCdsArchive {
+    // 预热程序（与镜像构建时使用的相同）
+    private static final String WARM_UP_RESOURCE = "cds/Main.java";
+
+    // 是否启用
+    @Value("${sandbox.java-run.cds.enabled:true}")
+    private boolean enabled;
+
+    // 镜像内的归档（镜像构建时生成）
+    @Value("${sandbox.java-run.cds.image-archive:/opt/cds/jdk.jsa}")
+    private String imageArchive;
+
+    // 宿主机上的归档目录
+    @Value("${sandbox.java-run.cds.dir:${user.dir}/cds}")
+    private String cdsDir;
+
+    // 进程内的 Java 编译服务
+    @Resource
+    private JavaCompilerService javaCompilerService;
+
+    // 宿主机上的归档是否已生成
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::build, "java-cds-builder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 使用镜像内归档的 JVM 参数（Docker 沙箱）
+     */
+    public List<String> dockerOptions() {
+        return enabled ? Arrays.asList("-Xshare:auto", "-XX:SharedArchiveFile=" + imageArchive) : Collections.emptyList();
+    }
+
+    /**
+     * 使用宿主机上归档的 JVM 参数（原生沙箱），未生成时返回空字符串
+     */
+    public String nativeOption() {
+        return ready ? " -Xshare:auto -XX:SharedArchiveFile=" + getArchive().getAbsolutePath() : "";
+    }
+
+    private File getArchive() {
+        return new File(cdsDir, "jdk.jsa");
+    }
+
+    /**
+     * 生成归档：运行预热程序记录加载的类，再按类列表导出归档（JDK 版本变化后旧的归档会失效，所以每次启动都重新生成）
+     */
+    private void build() {
+        File workDir = new File(cdsDir, "work");
+        try {
+            FileUtil.del(workDir);
+            File source = new File(workDir, "Main.java");
+            String code;
+            try (InputStream inputStream = JavaCdsArchive.class.getClassLoader().getResourceAsStream(WARM_UP_RESOURCE)) {
+                code = IoUtil.read(inputStream, StandardCharsets.UTF_8);
+            }
+            FileUtil.writeString(code, source, StandardCharsets.UTF_8);
+            ExecuteMessage compileMessage = javaCompilerService.isAvailable()
+                    ? javaCompilerService.compile(source, code, null)
+                    : ProcessUtil.runCmdAndGetMessage("javac -encoding utf-8 " + source.getAbsolutePath(), null, "编译CDS预热程序");
+            if (compileMessage.getExitValue() != 0) {
+                log.warn("编译 CDS 预热程序失败：{}", compileMessage.getErrorMessage());
+                return;
+            }
+
+            // 1. 记录预热程序加载的类
+            File loadedClassList = new File(workDir, "loaded.lst");
+            Process warmUp = Runtime.getRuntime().exec(new String[]{"java", "-Xshare:off", "-XX:DumpLoadedClassList=" + loadedClassList.getAbsolutePath(),
+                    "-cp", workDir.getAbsolutePath(), "Main"});
+            try (OutputStream outputStream = warmUp.getOutputStream()) {
+                outputStream.write("1 2\n".getBytes(StandardCharsets.UTF_8));
+            }
+            if (ProcessUtil.runProcessAndGetMessage(warmUp, "CDS预热").getExitValue() != 0) {
+                return;
+            }
+            // 归档只包含 JDK 的类，去掉预热程序自己的类以及其中的 lambda
+            List<String> classes = FileUtil.readLines(loadedClassList, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.startsWith("Main") && !line.startsWith("@lambda-proxy Main ")).collect(Collectors.toList());
+            File classList = FileUtil.writeLines(classes, new File(workDir, "jdk.classlist"), StandardCharsets.UTF_8);
+
+            // 2. 导出归档（先生成临时文件再重命名，避免 JVM 读到不完整的归档）
+            File temp = new File(workDir, "jdk.jsa");
+            Process dump = Runtime.getRuntime().exec(new String[]{"java", "-Xshare:dump", "-XX:SharedClassListFile=" + classList.getAbsolutePath(),
+                    "-XX:SharedArchiveFile=" + temp.getAbsolutePath()});
+            ExecuteMessage dumpMessage = ProcessUtil.runProcessAndGetMessage(dump, "生成CDS归档");
+            if (dumpMessage.getExitValue() != 0 || !temp.exists()) {
+                return;
+            }
+            FileUtil.move(temp, getArchive(), true);
+            ready = true;
+            log.info("Java CDS 归档可用 {} 类数量:{}", getArchive().getAbsolutePath(), classes.size());
+        } catch (Exception e) {
+            log.error("生成 Java CDS 归档失败", e);
+        } finally {
+            FileUtil.del(workDir);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.luoying.core.runner;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Java 用例执行进程（在独立的 JVM 中运行，由 {@link JavaForkServerPool} 启动和回收）
+ * 常驻后按行读取用例，每个用例使用新的类加载器加载用户的 Main（静态变量互不影响），
+ * 用例的标准输入、输出、错误输出重定向到文件；只依赖 JDK，class 文件会被复制到单独的目录中运行
+ * <p>
+ * 控制通道：启动参数为执行进程池监听的本机端口，启动后先从标准输入读取一行令牌，连接端口并发送令牌，
+ * 之后的请求和响应都通过这个连接传输；连接只保存在 main 方法的局部变量中，
+ * 用户代码写原始的标准输出（FileDescriptor.out）不会进入控制通道，无法伪造判定结果
+ * <p>
+ * 请求：类目录\t输入文件\t输出文件\t错误输出文件\t时间限制ms\t累计分配限制byte\t输出限制byte
+ * 响应：状态 退出码 耗时ms（墙上时间） 内存KB 是否需要回收(0/1) CPU时间ms（用例主线程）
+ * 状态：OK 正常结束；RE 抛出异常；TLE 超时；MLE 用例的任意线程抛出 OutOfMemoryError（堆内存超过执行进程的 -Xmx）；
+ * OLE 标准输出或者错误输出超过输出限制（超出的部分不写入文件）
+ * <p>
+ * 累计分配限制统计用例所有线程累计分配的字节数（包括已经回收的对象，不是占用的内存），
+ * 只作为软限制：超过后用例照常执行，结束后回收执行进程，不影响判定结果
+ *
+ * @Author 落樱的悔恨
+ */
+public class JavaForkServer {
+    // 用户代码的主类
+    private static final String MAIN_CLASS = "Main";
+
+    // 用例抛出 OutOfMemoryError 时的内部标记（退出码按 1 返回，JVM 的状态可能已经不正常，需要回收）
+    private static final int OOM_EXIT_CODE = -2;
+
+    // 检查用例状态的间隔 ms
+    private static final long CHECK_INTERVAL = 10L;
+
+    // 当前用例的线程是否抛出过 OutOfMemoryError
+    private static volatile boolean caseOutOfMemory;
+
+    // 当前用例的输出是否超过输出限制
+    private static volatile boolean caseOutputExceeded;
+
+    // 当前用例的输出（用户代码调用 System.exit 时在关闭钩子中刷新）
+    private static volatile PrintStream caseOut;
+
+    private static volatile PrintStream caseErr;
+
+    public static void main(String[] args) throws IOException {
+        // 令牌在用户代码运行之前读取；用户代码使用重定向后的 System.in/out/err
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(new FileInputStream(FileDescriptor.in), StandardCharsets.UTF_8));
+        String token = stdin.readLine();
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+        BufferedReader requests = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream responses = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+        responses.println(token);
+        Runtime.getRuntime().addShutdownHook(new Thread(JavaForkServer::flushCase));
+        warmUp();
+        responses.println("READY");
+        String request;
+        while ((request = requests.readLine()) != null) {
+            if (request.isEmpty()) {
+                continue;
+            }
+            responses.println(runCase(request.split("\t")));
+        }
+        // 服务端关闭了连接，不再等待残留的用户线程
+        System.exit(0);
+    }
+
+    /**
+     * 执行一个用例
+     */
+    private static String runCase(String[] request) throws IOException {
+        File classDir = new File(request[0]);
+        long timeLimit = Long.parseLong(request[4]);
+        long allocationLimit = Long.parseLong(request[5]);
+        long outputLimit = Long.parseLong(request[6]);
+        InputStream in = new BufferedInputStream(new FileInputStream(request[1]));
+        caseOutputExceeded = false;
+        caseOut = new PrintStream(new BufferedOutputStream(new CaseOutputStream(new FileOutputStream(request[2]), outputLimit)), false, "UTF-8");
+        caseErr = new PrintStream(new BufferedOutputStream(new CaseOutputStream(new FileOutputStream(request[3]), outputLimit)), false, "UTF-8");
+        System.setIn(in);
+        System.setOut(caseOut);
+        System.setErr(caseErr);
+
+        // 父加载器为平台类加载器，用户代码访问不到执行进程的类
+        URLClassLoader loader = new URLClassLoader(new URL[]{classDir.toURI().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+        // 用例线程以及用户代码创建的线程都在这个线程组中，记录用户线程未捕获的 OutOfMemoryError
+        caseOutOfMemory = false;
+        ThreadGroup group = new CaseThreadGroup();
+        int[] exitCode = {0};
+        // 线程 id -> 累计分配的字节数（检查时记录，主线程结束前记录自己的最终值）
+        Map<Long, Long> allocated = new ConcurrentHashMap<>();
+        Thread mainThread = new Thread(group, () -> {
+            exitCode[0] = invokeMain(loader);
+            recordAllocatedBytes(Thread.currentThread(), allocated);
+        }, "main");
+        mainThread.setContextClassLoader(loader);
+
+        long baseline = resetPeakUsage();
+        long start = System.currentTimeMillis();
+        mainThread.start();
+        long[] cpuTime = {0};
+        String status = await(group, mainThread, start, timeLimit, cpuTime, allocated);
+        long time = System.currentTimeMillis() - start;
+        long memory = Math.max(0, peakUsage() - baseline) / 1024;
+        boolean outOfMemory = caseOutOfMemory || exitCode[0] == OOM_EXIT_CODE;
+        if (outOfMemory && !"TLE".equals(status)) {
+            status = "MLE";
+        }
+        flushCase();
+        if (caseOutputExceeded && "OK".equals(status)) {
+            // 用例结束后最后一次刷新的输出也可能超限
+            status = "OLE";
+        }
+        boolean finished = "OK".equals(status);
+        if (finished && exitCode[0] != 0) {
+            status = "RE";
+        }
+        boolean overAllocated = allocationLimit > 0 && sum(allocated) > allocationLimit;
+        in.close();
+        caseOut.close();
+        caseErr.close();
+        loader.close();
+        // 超时、内存溢出或者还有线程残留时，执行进程不能再复用；累计分配超过软限制时也回收，避免堆一直保持扩张后的大小
+        boolean recycle = !finished || outOfMemory || overAllocated || group.activeCount() > 0;
+        int exitValue = !finished ? -1 : exitCode[0];
+        return String.format("%s %d %d %d %d %d", status, exitValue, time, memory, recycle ? 1 : 0, cpuTime[0] / 1000000);
+    }
+
+    /**
+     * 调用用户代码的 main 方法，返回退出码（与 java 命令一致：未捕获的异常退出码为 1）
+     */
+    private static int invokeMain(ClassLoader loader) {
+        try {
+            Class<?> mainClass = Class.forName(MAIN_CLASS, true, loader);
+            Method main = mainClass.getMethod("main", String[].class);
+            main.invoke(null, (Object) new String[0]);
+            return 0;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            trimStackTrace(cause);
+            System.err.print("Exception in thread \"main\" ");
+            cause.printStackTrace();
+            return cause instanceof OutOfMemoryError ? OOM_EXIT_CODE : 1;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return e instanceof OutOfMemoryError ? OOM_EXIT_CODE : 1;
+        }
+    }
+
+    /**
+     * 去掉异常堆栈中反射调用以及执行进程自身的部分，与直接运行 java 命令时一致
+     */
+    private static void trimStackTrace(Throwable throwable) {
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        for (int i = 0; i < stackTrace.length; i++) {
+            String className = stackTrace[i].getClassName();
+            if (className.startsWith("jdk.internal.reflect.") || className.startsWith("sun.reflect.")) {
+                throwable.setStackTrace(Arrays.copyOf(stackTrace, i));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 等待用例结束（与 java 命令一致，等待用户代码创建的非守护线程结束）
+     */
+    private static String await(ThreadGroup group, Thread mainThread, long start, long timeLimit, long[] cpuTime, Map<Long, Long> allocated) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        try {
+            while (true) {
+                long remaining = timeLimit - (System.currentTimeMillis() - start);
+                if (remaining <= 0) {
+                    return "TLE";
+                }
+                // 线程结束后无法再读取 CPU 时间，每次检查时记录
+                long threadCpuTime = threadMXBean.getThreadCpuTime(mainThread.getId());
+                if (threadCpuTime > 0) {
+                    cpuTime[0] = threadCpuTime;
+                }
+                mainThread.join(Math.min(CHECK_INTERVAL, remaining));
+                recordAllocatedBytes(group, allocated);
+                if (caseOutOfMemory) {
+                    // 用户线程已经内存溢出，不再等待其他线程
+                    return "MLE";
+                }
+                if (caseOutputExceeded) {
+                    // 输出已经超限，不再等待用例结束
+                    return "OLE";
+                }
+                if (!mainThread.isAlive() && !hasNonDaemonThread(group)) {
+                    return "OK";
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "TLE";
+        }
+    }
+
+    /**
+     * 用例的线程组，记录用户线程未捕获的 OutOfMemoryError
+     * （执行进程池会把它的 class 文件与执行进程一起复制出来）
+     */
+    static class CaseThreadGroup extends ThreadGroup {
+        CaseThreadGroup() {
+            super("case");
+        }
+
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            if (e instanceof OutOfMemoryError) {
+                caseOutOfMemory = true;
+            }
+            super.uncaughtException(t, e);
+        }
+    }
+
+    /**
+     * 用例的输出流，超过输出限制的部分直接丢弃并记录超限
+     * （执行进程池会把它的 class 文件与执行进程一起复制出来）
+     */
+    static class CaseOutputStream extends FilterOutputStream {
+        // 剩余可写入的字节数
+        private long remaining;
+
+        CaseOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > remaining) {
+                caseOutputExceeded = true;
+                len = (int) remaining;
+            }
+            if (len > 0) {
+                out.write(b, off, len);
+                remaining -= len;
+            }
+        }
+    }
+
+    private static boolean hasNonDaemonThread(ThreadGroup group) {
+        Thread[] threads = new Thread[group.activeCount() + 1];
+        int count = group.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            if (!threads[i].isDaemon() && threads[i].isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录用例每个线程累计分配的字节数（线程结束后无法再读取，保留最后一次的值）
+     */
+    private static void recordAllocatedBytes(ThreadGroup group, Map<Long, Long> allocated) {
+        Thread[] threads = new Thread[group.activeCount() + 1];
+        int count = group.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            recordAllocatedBytes(threads[i], allocated);
+        }
+    }
+
+    private static void recordAllocatedBytes(Thread thread, Map<Long, Long> allocated) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        long bytes = ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(thread.getId());
+        if (bytes > 0) {
+            allocated.merge(thread.getId(), bytes, Math::max);
+        }
+    }
+
+    private static long sum(Map<Long, Long> allocated) {
+        long total = 0;
+        for (long bytes : allocated.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * 重置堆内存的峰值，返回当前的使用量
+     */
+    private static long resetPeakUsage() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pool.resetPeakUsage();
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private static long peakUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        pools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+        return pools;
+    }
+
+    private static void flushCase() {
+        PrintStream out = caseOut;
+        if (out != null) {
+            out.flush();
+        }
+        PrintStream err = caseErr;
+        if (err != null) {
+            err.flush();
+        }
+    }
+
+    /**
+     * 预先加载用户代码常用的类
+     */
+    private static void warmUp() {
+        String[] classNames = {"java.util.Scanner", "java.io.BufferedReader", "java.io.StreamTokenizer", "java.util.StringTokenizer",
+                "java.util.ArrayList", "java.util.HashMap", "java.util.TreeMap", "java.util.PriorityQueue", "java.util.ArrayDeque",
+                "java.math.BigInteger", "java.math.BigDecimal", "java.util.regex.Pattern"};
+        for (String className : classNames) {
+            try {
+                Class.forName(className);
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+        new java.util.Scanner("1 2").nextInt();
+    }
+}
@@ -0,0 +1,423 @@
+package com.luoying.core.runner;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import com.luoying.core.nativ.RlimitLauncher;
+import com.luoying.exception.OutputLimitExceededException;
+import com.luoying.model.ExecuteMessage;
+import com.luoying.model.enums.JudgeInfoMessagenum;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Java 用例执行进程池
+ * 预先启动若干个 {@link JavaForkServer} 进程，Java 原生沙箱的每个用例交给空闲的执行进程运行，
+ * 省去每个用例启动 JVM 的时间；执行进程运行指定次数、超时、超限或者异常后销毁，并在后台补充新的进程；
+ * 不同运行配置（JVM 参数）的执行进程分开复用
+ * <p>
+ * 请求和响应通过本机回环地址上的连接传输，执行进程启动时从标准输入读取令牌并在连接上返回，
+ * 只接受令牌一致的连接；执行进程的标准输出丢弃，用户代码写原始的标准输出无法伪造判定结果
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class JavaForkServerPool {
+    // 执行进程的启动类
+    private static final String SERVER_CLASS = JavaForkServer.class.getName();
+
+    // 执行进程用到的全部类（启动类以及它的内部类）
+    private static final Class<?>[] SERVER_CLASSES = {JavaForkServer.class, JavaForkServer.CaseThreadGroup.class,
+            JavaForkServer.CaseOutputStream.class};
+
+    // 用例的输入、输出、错误输出文件名（位于用户代码目录）
+    private static final String INPUT_FILE_NAME = "case.in";
+
+    private static final String OUTPUT_FILE_NAME = "case.out";
+
+    private static final String ERROR_FILE_NAME = "case.err";
+
+    // 执行进程没有按时响应时，额外等待的时间 ms
+    private static final long RESPONSE_GRACE = 1000L;
+
+    // 等待执行进程连接并完成预热的时间 ms
+    private static final int START_TIMEOUT = 30000;
+
+    // 执行进程因超出资源限制被终止时的退出码（128 + 信号）：SIGXCPU、SIGXFSZ
+    private static final int EXIT_SIGXCPU = 128 + 24;
+
+    private static final int EXIT_SIGXFSZ = 128 + 25;
+
+    // 是否启用（关闭后每个用例启动一个 java 进程）
+    @Value("${sandbox.java-runner.enabled:true}")
+    private boolean enabled;
+
+    // 执行进程数量上限
+    @Value("${sandbox.java-runner.size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int size;
+
+    // 保持空闲的执行进程数量
+    @Value("${sandbox.java-runner.min-idle:1}")
+    private int minIdle;
+
+    // 每个执行进程最多运行的用例数
+    @Value("${sandbox.java-runner.max-runs:100}")
+    private int maxRuns;
+
+    // 执行进程的 JVM 参数
+    @Value("${sandbox.java-runner.jvm-options:-Xmx256m -Dfile.encoding=UTF-8}")
+    private String jvmOptions;
+
+    // 每个用例所有线程累计分配的字节数软限制 byte（不是占用的内存，超过后回收执行进程，不影响判定结果；0 为不限制）
+    @Value("${sandbox.java-runner.allocation-limit:4294967296}")
+    private long allocationLimit;
+
+    // 执行进程 class 文件所在目录
+    @Value("${sandbox.java-runner.dir:${user.dir}/javaRunner}")
+    private String runnerDir;
+
+    // Java 运行配置
+    @Resource
+    private JavaRunProfiles javaRunProfiles;
+
+    // Java CDS 归档
+    @Resource
+    private JavaCdsArchive javaCdsArchive;
+
+    // 内核资源限制
+    @Resource
+    private RlimitLauncher rlimitLauncher;
+
+    private Semaphore permits;
+
+    private volatile boolean available;
+
+    // 运行配置 -> 空闲的执行进程
+    private final ConcurrentHashMap<String, Deque<Server>> idleServers = new ConcurrentHashMap<>();
+
+    // 在后台启动执行进程、检查用例超时
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, r -> {
+        Thread thread = new Thread(r, "java-runner-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(size);
+        if (!enabled) {
+            return;
+        }
+        try {
+            // 执行进程只依赖 JDK，把 class 文件复制出来单独运行（服务可能打包为 jar）
+            for (Class<?> serverClass : SERVER_CLASSES) {
+                String classFile = serverClass.getName().replace('.', '/') + ".class";
+                try (InputStream inputStream = JavaForkServer.class.getClassLoader().getResourceAsStream(classFile)) {
+                    FileUtil.writeFromStream(inputStream, new File(runnerDir, classFile));
+                }
+            }
+            available = true;
+            scheduler.execute(this::replenish);
+        } catch (Exception e) {
+            log.error("初始化 Java 用例执行进程失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        available = false;
+        scheduler.shutdownNow();
+        for (Deque<Server> servers : idleServers.values()) {
+            Server server;
+            while ((server = servers.poll()) != null) {
+                server.destroy();
+            }
+        }
+    }
+
+    /**
+     * 是否可用
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * 执行一个用例
+     *
+     * @param classDir   用户代码 class 文件所在目录
+     * @param input      输入用例
+     * @param timeLimit   时间限制 ms
+     * @param outputLimit 标准输出、错误输出各自的上限 byte，超出时抛出 {@link OutputLimitExceededException}
+     * @param runProfile  运行配置，为空时使用默认配置
+     * @return {@link ExecuteMessage}
+     */
+    public ExecuteMessage run(File classDir, String input, long timeLimit, long outputLimit, String runProfile) {
+        String profile = javaRunProfiles.resolve(runProfile);
+        Deque<Server> servers = getIdleServers(profile);
+        Server server = null;
+        boolean acquired = false;
+        try {
+            permits.acquire();
+            acquired = true;
+            server = servers.poll();
+            while (server != null && !server.process.isAlive()) {
+                server.destroy();
+                server = servers.poll();
+            }
+            if (server == null) {
+                server = start(profile);
+            }
+            return server.run(classDir, input, timeLimit, outputLimit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            log.error("RunCode Exception:{}", e);
+            if (server != null) {
+                server.broken = true;
+            }
+            throw new RuntimeException("程序执行异常，" + e);
+        } finally {
+            if (server != null) {
+                release(server);
+            }
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    private void release(Server server) {
+        if (available && !server.broken && server.runs < maxRuns && server.process.isAlive()) {
+            getIdleServers(server.profile).push(server);
+            return;
+        }
+        server.destroy();
+        if (available) {
+            scheduler.execute(this::replenish);
+        }
+    }
+
+    private Deque<Server> getIdleServers(String profile) {
+        return idleServers.computeIfAbsent(profile, key -> new ConcurrentLinkedDeque<>());
+    }
+
+    /**
+     * 补充默认运行配置的空闲执行进程
+     */
+    private void replenish() {
+        String profile = javaRunProfiles.resolve(null);
+        Deque<Server> servers = getIdleServers(profile);
+        while (available && servers.size() < minIdle && permits.availablePermits() > servers.size()) {
+            try {
+                servers.push(start(profile));
+            } catch (Exception e) {
+                log.error("启动 Java 用例执行进程失败", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 启动执行进程，等待其完成预热
+     */
+    private Server start(String profile) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("java");
+        String options = jvmOptions + javaCdsArchive.nativeOption() + javaRunProfiles.options(profile);
+        command.addAll(Arrays.asList(options.trim().split("\\s+")));
+        command.add("-cp");
+        command.add(runnerDir);
+        command.add(SERVER_CLASS);
+        String token = UUID.randomUUID().toString();
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            command.add(String.valueOf(serverSocket.getLocalPort()));
+            // 执行进程的文件大小、CPU 时间也由内核兜底限制
+            Process process = new ProcessBuilder(rlimitLauncher.wrapResident(command, maxRuns))
+                    .redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")))
+                    .redirectError(ProcessBuilder.Redirect.appendTo(new File(runnerDir, "runner.log")))
+                    .start();
+            Server server = null;
+            try {
+                try (Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                    stdin.write(token + "\n");
+                }
+                server = accept(serverSocket, token, process, profile);
+                String ready = server.responses.readLine();
+                if (!"READY".equals(ready)) {
+                    throw new IOException("Java 用例执行进程预热失败");
+                }
+                server.socket.setSoTimeout(0);
+                return server;
+            } catch (IOException e) {
+                if (server != null) {
+                    server.destroy();
+                } else {
+                    process.destroyForcibly();
+                }
+                throw new IOException("Java 用例执行进程启动失败", e);
+            }
+        }
+    }
+
+    /**
+     * 等待执行进程连接，只接受发送了一致令牌的连接
+     */
+    private Server accept(ServerSocket serverSocket, String token, Process process, String profile) throws IOException {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("等待 Java 用例执行进程连接超时");
+            }
+            serverSocket.setSoTimeout((int) remaining);
+            Socket socket = serverSocket.accept();
+            socket.setSoTimeout(START_TIMEOUT);
+            try {
+                Server server = new Server(process, socket, profile);
+                if (token.equals(server.responses.readLine())) {
+                    return server;
+                }
+            } catch (IOException e) {
+                log.warn("Java 用例执行进程连接异常：{}", e.getMessage());
+            }
+            IoUtil.close(socket);
+        }
+    }
+
+    /**
+     * 执行进程
+     */
+    private class Server {
+        private final Process process;
+
+        // 控制通道
+        private final Socket socket;
+
+        // 运行配置
+        private final String profile;
+
+        private final BufferedWriter requests;
+
+        private final BufferedReader responses;
+
+        private int runs;
+
+        private volatile boolean broken;
+
+        Server(Process process, Socket socket, String profile) throws IOException {
+            this.process = process;
+            this.socket = socket;
+            this.profile = profile;
+            this.requests = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            this.responses = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        ExecuteMessage run(File classDir, String input, long timeLimit, long outputLimit) throws IOException, InterruptedException {
+            runs++;
+            File inputFile = new File(classDir, INPUT_FILE_NAME);
+            File outputFile = new File(classDir, OUTPUT_FILE_NAME);
+            File errorFile = new File(classDir, ERROR_FILE_NAME);
+            FileUtil.writeString(input + "\n", inputFile, StandardCharsets.UTF_8);
+            requests.write(String.join("\t", classDir.getAbsolutePath(), inputFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+                    errorFile.getAbsolutePath(), String.valueOf(timeLimit), String.valueOf(allocationLimit), String.valueOf(outputLimit)));
+            requests.newLine();
+            requests.flush();
+
+            // 执行进程自己会限制时间，没有按时响应（例如卡死在 GC 中）时强制销毁
+            long start = System.currentTimeMillis();
+            ScheduledFuture<?> watchdog = scheduler.schedule(() -> {
+                broken = true;
+                process.destroyForcibly();
+            }, timeLimit + RESPONSE_GRACE, TimeUnit.MILLISECONDS);
+            String response;
+            try {
+                response = responses.readLine();
+            } catch (IOException e) {
+                // 执行进程被销毁时连接可能被重置
+                response = null;
+            } finally {
+                watchdog.cancel(false);
+            }
+
+            ExecuteMessage executeMessage = new ExecuteMessage();
+            String status;
+            if (response == null) {
+                // 用户代码调用了 System.exit，或者执行进程被销毁
+                broken = true;
+                int exitValue = process.waitFor();
+                status = exitValue == 0 ? "OK" : "RE";
+                if (exitValue == EXIT_SIGXCPU || System.currentTimeMillis() - start >= timeLimit) {
+                    status = "TLE";
+                } else if (exitValue == EXIT_SIGXFSZ) {
+                    status = "OLE";
+                }
+                executeMessage.setExitValue(exitValue);
+                executeMessage.setTime(System.currentTimeMillis() - start);
+                executeMessage.setMemory(0L);
+            } else {
+                String[] fields = response.split(" ");
+                status = fields[0];
+                executeMessage.setExitValue(Integer.parseInt(fields[1]));
+                executeMessage.setTime(Long.parseLong(fields[2]));
+                executeMessage.setMemory(Long.parseLong(fields[3]));
+                broken |= "1".equals(fields[4]);
+                executeMessage.setCpuTime(Long.parseLong(fields[5]));
+            }
+
+            // 执行进程已经截断了超出的部分，这里再检查文件大小（用户代码可能直接写文件），超限时不读取
+            if ("OLE".equals(status) || outputFile.length() > outputLimit || errorFile.length() > outputLimit) {
+                broken = true;
+                throw new OutputLimitExceededException(String.valueOf(Math.max(outputFile.length(), errorFile.length())));
+            }
+            String output = readLines(outputFile);
+            if (output != null) {
+                executeMessage.setMessage(output);
+            }
+            if ("TLE".equals(status)) {
+                executeMessage.setExitValue(-1);
+                executeMessage.setErrorMessage(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue());
+            } else if ("MLE".equals(status)) {
+                executeMessage.setExitValue(-1);
+                executeMessage.setErrorMessage(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED.getValue());
+            } else if (executeMessage.getExitValue() != 0) {
+                executeMessage.setErrorMessage(readLines(errorFile));
+            }
+            log.info("{}", executeMessage);
+            return executeMessage;
+        }
+
+        void destroy() {
+            IoUtil.close(requests);
+            IoUtil.close(responses);
+            IoUtil.close(socket);
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * 与运行 java 进程时一致：按行读取，以换行符连接，没有输出时返回 null
+     */
+    private static String readLines(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        List<String> lines = FileUtil.readLines(file, StandardCharsets.UTF_8);
+        return lines.isEmpty() ? null : StringUtils.join(lines, "\n");
+    }
+}
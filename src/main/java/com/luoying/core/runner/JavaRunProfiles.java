@@ -0,0 +1,68 @@
+package com.luoying.core.runner;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Java 运行配置
+ * 不同题目可以选择不同的 JVM 参数，例如短时间运行的程序只使用 C1 编译、Serial GC，减少启动和预热的开销
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@ConfigurationProperties(prefix = "sandbox.java-run")
+@Data
+@Slf4j
+public class JavaRunProfiles {
+    /**
+     * 请求没有指定运行配置时使用的配置
+     */
+    private String defaultProfile = "default";
+
+    /**
+     * 运行配置名称 -> JVM 参数
+     */
+    private Map<String, String> profiles = new HashMap<>();
+
+    /**
+     * 获取实际使用的运行配置名称（为空或者未知时使用默认配置）
+     *
+     * @param profile 运行配置名称，可以为空
+     */
+    public String resolve(String profile) {
+        if (StrUtil.isBlank(profile)) {
+            return defaultProfile;
+        }
+        if (!profiles.containsKey(profile)) {
+            log.warn("未知的运行配置 {}，使用默认配置", profile);
+            return defaultProfile;
+        }
+        return profile;
+    }
+
+    /**
+     * 获取运行配置对应的 JVM 参数（以空格开头，没有参数时返回空字符串）
+     *
+     * @param profile 运行配置名称，可以为空
+     */
+    public String options(String profile) {
+        String options = profiles.get(resolve(profile));
+        return StrUtil.isBlank(options) ? "" : " " + options.trim();
+    }
+
+    /**
+     * 获取运行配置对应的 JVM 参数列表（按空白拆分）
+     *
+     * @param profile 运行配置名称，可以为空
+     */
+    public List<String> optionList(String profile) {
+        return StrUtil.splitTrim(profiles.get(resolve(profile)), ' ');
+    }
+}
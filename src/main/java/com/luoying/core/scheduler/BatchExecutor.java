@@ -0,0 +1,95 @@
+package com.luoying.core.scheduler;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.luoying.core.CodeSandBox;
+import com.luoying.model.ExecuteCodeBatchResult;
+import com.luoying.model.ExecuteCodeRequest;
+import com.luoying.model.ExecuteCodeResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 批量执行代码
+ * 批量中的请求一起交给 {@link SubmissionScheduler}，每个请求完成后立即回调；
+ * 完全相同的请求（编程语言、运行配置、代码、输入用例）只执行一次；
+ * 代码相同、输入用例不同的请求在第一个请求完成后再进入队列，直接使用它留下的编译缓存，不会同时编译相同的代码；
+ * 所有请求在批量提交时一起完成准入检查，之后不会在执行过程中被拒绝
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class BatchExecutor {
+    @Resource
+    private SubmissionScheduler submissionScheduler;
+
+    /**
+     * 执行批量请求
+     *
+     * @param executeCodeRequests 执行代码请求
+     * @param codeSandBoxResolver 根据请求获取代码沙箱
+     * @param listener            每个请求完成后的回调（可能在不同线程中调用）
+     * @return 全部请求完成
+     */
+    public CompletableFuture<Void> execute(List<ExecuteCodeRequest> executeCodeRequests, Function<ExecuteCodeRequest, CodeSandBox> codeSandBoxResolver,
+                                           Consumer<ExecuteCodeBatchResult> listener) {
+        // 请求 -> 执行结果
+        Map<String, CompletableFuture<ExecuteCodeResponse>> requestFutures = new HashMap<>();
+        // 代码 -> 第一个使用该代码的请求的执行结果
+        Map<String, CompletableFuture<ExecuteCodeResponse>> codeFutures = new HashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        int shared = 0;
+        for (int i = 0; i < executeCodeRequests.size(); i++) {
+            ExecuteCodeRequest executeCodeRequest = executeCodeRequests.get(i);
+            String codeKey = DigestUtil.sha256Hex(StrUtil.join("\0", executeCodeRequest.getLanguage(), executeCodeRequest.getRunProfile(), executeCodeRequest.getCode()));
+            List<String> inputList = executeCodeRequest.getInputList() == null ? Collections.emptyList() : executeCodeRequest.getInputList();
+            String requestKey = DigestUtil.sha256Hex(codeKey + "\0" + inputList.size() + "\0" + String.join("\0", inputList));
+            CompletableFuture<ExecuteCodeResponse> future = requestFutures.get(requestKey);
+            if (future != null) {
+                shared++;
+            } else {
+                // 无论第一个相同代码的请求是否成功，都在它结束后执行
+                future = submit(executeCodeRequest, codeSandBoxResolver, codeFutures.get(codeKey));
+                codeFutures.putIfAbsent(codeKey, future);
+                requestFutures.put(requestKey, future);
+            }
+            int index = i;
+            futures.add(future.handle((response, throwable) -> {
+                listener.accept(toResult(index, response, throwable));
+                return null;
+            }));
+        }
+        log.info("批量执行 请求数:{} 相同请求:{} 不同代码:{}", executeCodeRequests.size(), shared, codeFutures.size());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<ExecuteCodeResponse> submit(ExecuteCodeRequest executeCodeRequest, Function<ExecuteCodeRequest, CodeSandBox> codeSandBoxResolver,
+                                                          CompletableFuture<ExecuteCodeResponse> predecessor) {
+        try {
+            CodeSandBox codeSandBox = codeSandBoxResolver.apply(executeCodeRequest);
+            return submissionScheduler.submitAfter(executeCodeRequest, () -> codeSandBox.executeCode(executeCodeRequest), predecessor);
+        } catch (Exception e) {
+            CompletableFuture<ExecuteCodeResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private static ExecuteCodeBatchResult toResult(int index, ExecuteCodeResponse response, Throwable throwable) {
+        if (throwable == null) {
+            return ExecuteCodeBatchResult.builder().index(index).response(response).build();
+        }
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        String error = cause instanceof RejectedExecutionException ? "沙箱繁忙，请稍后重试" : cause.getMessage();
+        return ExecuteCodeBatchResult.builder().index(index).error(error).build();
+    }
+}
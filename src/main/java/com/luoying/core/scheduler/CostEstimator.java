@@ -0,0 +1,128 @@
+package com.luoying.core.scheduler;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.StrUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 提交耗时估计
+ * 按编程语言以及（编程语言，题目）记录最近提交的实际耗时（编译或命中编译缓存 + 运行所有用例），
+ * 使用指数加权移动平均得到预期耗时；题目的样本足够时使用题目的估计，否则使用编程语言的估计
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+public class CostEstimator {
+    // 未知编程语言
+    private static final String UNKNOWN_LANGUAGE = "unknown";
+
+    // 平滑系数（新样本的权重）
+    @Value("${sandbox.scheduler.cost.alpha:0.2}")
+    private double alpha;
+
+    // 没有样本时的预期耗时 ms
+    @Value("${sandbox.scheduler.cost.default-cost:1000}")
+    private long defaultCost;
+
+    // 使用题目估计所需的最少样本数
+    @Value("${sandbox.scheduler.cost.min-question-samples:3}")
+    private int minQuestionSamples;
+
+    // 最多记录的题目数（最近最少使用淘汰）
+    @Value("${sandbox.scheduler.cost.max-questions:10000}")
+    private int maxQuestions;
+
+    // 编程语言 -> 耗时
+    private final Map<String, Ewma> languageCosts = new ConcurrentHashMap<>();
+
+    // 编程语言:题目 -> 耗时
+    private LRUCache<String, Ewma> questionCosts;
+
+    @PostConstruct
+    public void init() {
+        questionCosts = CacheUtil.newLRUCache(maxQuestions);
+    }
+
+    /**
+     * 预期耗时 ms
+     *
+     * @param language   编程语言
+     * @param questionId 题目 id，可以为空
+     */
+    public long estimate(String language, Long questionId) {
+        if (questionId != null) {
+            Ewma questionCost = questionCosts.get(questionKey(language, questionId), false);
+            if (questionCost != null && questionCost.samples() >= minQuestionSamples) {
+                return questionCost.value();
+            }
+        }
+        Ewma languageCost = languageCosts.get(languageKey(language));
+        return languageCost == null ? defaultCost : languageCost.value();
+    }
+
+    /**
+     * 记录一次提交的实际耗时
+     *
+     * @param language   编程语言
+     * @param questionId 题目 id，可以为空
+     * @param cost       耗时 ms
+     */
+    public void record(String language, Long questionId, long cost) {
+        languageCosts.computeIfAbsent(languageKey(language), key -> new Ewma()).update(cost, alpha);
+        if (questionId != null) {
+            String key = questionKey(language, questionId);
+            Ewma questionCost = questionCosts.get(key, false);
+            if (questionCost == null) {
+                questionCost = new Ewma();
+                questionCosts.put(key, questionCost);
+            }
+            questionCost.update(cost, alpha);
+        }
+    }
+
+    /**
+     * 各编程语言的预期耗时 ms
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> costs = new TreeMap<>();
+        languageCosts.forEach((language, cost) -> costs.put(language, cost.value()));
+        return costs;
+    }
+
+    private static String languageKey(String language) {
+        return StrUtil.isBlank(language) ? UNKNOWN_LANGUAGE : language;
+    }
+
+    private static String questionKey(String language, Long questionId) {
+        return languageKey(language) + ":" + questionId;
+    }
+
+    /**
+     * 指数加权移动平均
+     */
+    private static class Ewma {
+        private double value;
+
+        private long samples;
+
+        synchronized void update(long sample, double alpha) {
+            value = samples == 0 ? sample : value + alpha * (sample - value);
+            samples++;
+        }
+
+        synchronized long value() {
+            return Math.round(value);
+        }
+
+        synchronized long samples() {
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.luoying.core.scheduler;
+
+import cn.hutool.core.util.StrUtil;
+import com.luoying.config.ContainerPoolProperties;
+import com.luoying.config.SubmissionSchedulerProperties;
+import com.luoying.core.SubmissionExecutor;
+import com.luoying.model.ExecuteCodeRequest;
+import com.luoying.model.enums.SubmissionPriorityEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 提交调度器
+ * 提交先按优先级（比赛、练习、重判）进入各自的队列，执行器有空闲时按优先级从高到低取出，
+ * 高优先级的队列为空时才执行低优先级的提交（例如批量重判只使用空闲的执行能力）；
+ * 同一优先级内按（租户，编程语言）分流做加权公平排队（自计时公平排队：每个提交占用 预期耗时/租户权重 的虚拟时间，
+ * 按结束时间从小到大执行），各流按执行时间平分执行能力，一个租户大量提交时不会让其他租户一直等待；
+ * 预期耗时来自 {@link CostEstimator}，预期耗时短的流在相同的执行时间内可以执行更多提交，
+ * 不会排在耗时长的提交后面（短作业优先），同一流内按提交顺序执行；
+ * 新提交的开始时间不早于当前的虚拟时间，耗时长的提交等待一段时间后也会被执行，不会饿死；
+ * 队列中提交的预期耗时之和除以并发数即为新提交的预期等待时间，超过上限时拒绝提交
+ *
+ * @Author 落樱的悔恨
+ */
+@Component
+@Slf4j
+public class SubmissionScheduler {
+    // 默认租户
+    private static final String DEFAULT_TENANT = "default";
+
+    // 默认的排队上限
+    private static final int DEFAULT_QUEUE_LIMIT = 1000;
+
+    // 默认的预期等待时间上限 ms（0 为不限制）
+    private static final long DEFAULT_MAX_EXPECTED_WAIT = 0L;
+
+    // 流虚拟时间记录的清理阈值
+    private static final int FLOW_CLEAN_THRESHOLD = 10000;
+
+    @Resource
+    private SubmissionSchedulerProperties properties;
+
+    @Resource
+    private SubmissionExecutor submissionExecutor;
+
+    @Resource
+    private CostEstimator costEstimator;
+
+    // 运行用户代码的容器池配置
+    @Resource
+    private ContainerPoolProperties containerPoolProperties;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 优先级 -> 队列
+    private final Map<SubmissionPriorityEnum, Lane> lanes = new EnumMap<>(SubmissionPriorityEnum.class);
+
+    // 同时执行的提交数（没有配置时为执行器的容量与运行容器数中较小的一个）
+    private int concurrency;
+
+    // 正在执行的提交数
+    private int running;
+
+    // 提交序号（结束时间相同时先提交的先执行）
+    private long sequence;
+
+    @PostConstruct
+    public void init() {
+        // 每个提交至少占用一个运行容器（多出的分片只借用空闲容器），超过容器数的提交只会在容器池中等待，
+        // 留在队列中才能按优先级以及公平排队调度（virtual 模式的执行器容量远大于容器数）
+        concurrency = properties.getConcurrency() > 0 ? properties.getConcurrency()
+                : Math.min(submissionExecutor.capacity(), containerPoolProperties.getSize());
+        log.info("提交调度器同时执行的提交数:{}", concurrency);
+        for (SubmissionPriorityEnum priority : SubmissionPriorityEnum.values()) {
+            int limit = properties.getQueueLimits().getOrDefault(priority.getValue(), DEFAULT_QUEUE_LIMIT);
+            long maxExpectedWait = properties.getMaxExpectedWaits().getOrDefault(priority.getValue(), DEFAULT_MAX_EXPECTED_WAIT);
+            lanes.put(priority, new Lane(priority, limit, maxExpectedWait));
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param executeCodeRequest 执行代码请求（读取优先级、租户、编程语言、题目）
+     * @param task               任务
+     * @return {@link CompletableFuture}
+     * @throws RejectedExecutionException 对应优先级的队列已满、预期等待时间超过上限，或者执行器拒绝
+     */
+    public <T> CompletableFuture<T> submit(ExecuteCodeRequest executeCodeRequest, Supplier<T> task) {
+        return submitAfter(executeCodeRequest, task, null);
+    }
+
+    /**
+     * 提交任务，在前一个任务结束（无论是否成功）后才进入队列
+     * 准入检查在提交时完成，并立即占用队列名额以及预期耗时，之后进入队列时不会再因为队列已满被拒绝
+     *
+     * @param executeCodeRequest 执行代码请求（读取优先级、租户、编程语言、题目）
+     * @param task               任务
+     * @param predecessor        前一个任务，为 null 时立即进入队列
+     * @return {@link CompletableFuture}
+     * @throws RejectedExecutionException 对应优先级的队列已满、预期等待时间超过上限，或者执行器拒绝
+     */
+    public <T> CompletableFuture<T> submitAfter(ExecuteCodeRequest executeCodeRequest, Supplier<T> task, CompletableFuture<?> predecessor) {
+        if (!properties.isEnabled()) {
+            // 未启用调度时没有排队和准入控制，直接交给执行器
+            return predecessor == null ? submissionExecutor.submit(task)
+                    : predecessor.handle((value, throwable) -> null).thenCompose(ignored -> submissionExecutor.submit(task));
+        }
+        SubmissionPriorityEnum priority = resolvePriority(executeCodeRequest.getPriority());
+        String tenant = StrUtil.isBlank(executeCodeRequest.getTenant()) ? DEFAULT_TENANT : executeCodeRequest.getTenant();
+        String language = executeCodeRequest.getLanguage();
+        Long questionId = executeCodeRequest.getQuestionId();
+        long cost = costEstimator.estimate(language, questionId);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Job job = new Job(tenant, language, questionId, cost, () -> submissionExecutor.submit(task), result);
+        Lane lane = lanes.get(priority);
+        lock.lock();
+        try {
+            if (lane.queue.size() + lane.reserved >= lane.limit) {
+                throw new RejectedExecutionException(priority.getText() + "队列已满");
+            }
+            if (lane.maxExpectedWait > 0 && (lane.queuedCost + cost) / Math.max(1, concurrency) > lane.maxExpectedWait) {
+                throw new RejectedExecutionException(priority.getText() + "队列的预期等待时间超过上限");
+            }
+            if (predecessor == null) {
+                lane.offer(job, weight(tenant), sequence++);
+            } else {
+                lane.reserve(job);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (predecessor == null) {
+            dispatch();
+        } else {
+            predecessor.whenComplete((value, throwable) -> {
+                lock.lock();
+                try {
+                    lane.release(job);
+                    lane.offer(job, weight(tenant), sequence++);
+                } finally {
+                    lock.unlock();
+                }
+                dispatch();
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 调度器指标：各优先级的排队数、排队上限、排队提交的预期耗时之和、已执行数、平均以及最大等待时间，各编程语言的预期耗时
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> scheduler = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            scheduler.put("running", running);
+            scheduler.put("concurrency", concurrency);
+            for (Lane lane : lanes.values()) {
+                Map<String, Object> metrics = new LinkedHashMap<>();
+                metrics.put("queued", lane.queue.size());
+                metrics.put("reserved", lane.reserved);
+                metrics.put("limit", lane.limit);
+                metrics.put("queuedCostMs", lane.queuedCost);
+                metrics.put("dispatched", lane.dispatched);
+                metrics.put("avgWaitMs", lane.dispatched == 0 ? 0 : lane.totalWait / lane.dispatched);
+                metrics.put("maxWaitMs", lane.maxWait);
+                scheduler.put(lane.priority.getValue(), metrics);
+            }
+        } finally {
+            lock.unlock();
+        }
+        scheduler.put("estimatedCostMs", costEstimator.snapshot());
+        return scheduler;
+    }
+
+    /**
+     * 执行器有空闲时，按优先级取出提交交给执行器
+     */
+    private void dispatch() {
+        List<Job> jobs = new ArrayList<>();
+        lock.lock();
+        try {
+            while (running < concurrency) {
+                Job job = poll();
+                if (job == null) {
+                    break;
+                }
+                running++;
+                jobs.add(job);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Job job : jobs) {
+            start(job);
+        }
+    }
+
+    private Job poll() {
+        for (Lane lane : lanes.values()) {
+            Job job = lane.poll();
+            if (job != null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void start(Job job) {
+        CompletableFuture<Object> result = (CompletableFuture<Object>) job.result;
+        CompletableFuture<?> future;
+        long startTime = System.currentTimeMillis();
+        try {
+            future = job.start.get();
+        } catch (RejectedExecutionException e) {
+            log.warn("执行器拒绝提交：{}", e.getMessage());
+            finish();
+            result.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((value, throwable) -> {
+            costEstimator.record(job.language, job.questionId, System.currentTimeMillis() - startTime);
+            finish();
+            dispatch();
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void finish() {
+        lock.lock();
+        try {
+            running--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SubmissionPriorityEnum resolvePriority(String priority) {
+        SubmissionPriorityEnum priorityEnum = SubmissionPriorityEnum.getEnumByValue(priority);
+        if (priorityEnum == null) {
+            priorityEnum = SubmissionPriorityEnum.getEnumByValue(properties.getDefaultPriority());
+        }
+        return priorityEnum == null ? SubmissionPriorityEnum.PRACTICE : priorityEnum;
+    }
+
+    private int weight(String tenant) {
+        return Math.max(1, properties.getTenantWeights().getOrDefault(tenant, 1));
+    }
+
+    /**
+     * 排队中的提交
+     */
+    private static class Job {
+        // 流（租户:编程语言）
+        private final String flow;
+
+        private final String language;
+
+        private final Long questionId;
+
+        // 预期耗时 ms
+        private final long cost;
+
+        // 交给执行器
+        private final Supplier<CompletableFuture<?>> start;
+
+        private final CompletableFuture<?> result;
+
+        // 进入队列的时间
+        private long enqueueTime;
+
+        // 结束时间（虚拟时间）
+        private double finishTag;
+
+        private long sequence;
+
+        Job(String tenant, String language, Long questionId, long cost, Supplier<CompletableFuture<?>> start, CompletableFuture<?> result) {
+            this.flow = tenant + ":" + (StrUtil.isBlank(language) ? "unknown" : language);
+            this.language = language;
+            this.questionId = questionId;
+            this.cost = cost;
+            this.start = start;
+            this.result = result;
+        }
+    }
+
+    /**
+     * 一个优先级的队列（调用方持有锁）
+     */
+    private static class Lane {
+        private final SubmissionPriorityEnum priority;
+
+        private final int limit;
+
+        // 预期等待时间上限 ms（0 为不限制）
+        private final long maxExpectedWait;
+
+        private final PriorityQueue<Job> queue = new PriorityQueue<>(Comparator.<Job>comparingDouble(job -> job.finishTag).thenComparingLong(job -> job.sequence));
+
+        // 流 -> 最后一个提交的结束时间（虚拟时间）
+        private final Map<String, Double> flowFinishTags = new HashMap<>();
+
+        // 当前的虚拟时间（最近取出的提交的结束时间）
+        private double virtualTime;
+
+        // 等待前一个任务结束、已占用队列名额的提交数
+        private int reserved;
+
+        // 排队以及占用名额的提交的预期耗时之和 ms
+        private long queuedCost;
+
+        private long dispatched;
+
+        private long totalWait;
+
+        private long maxWait;
+
+        Lane(SubmissionPriorityEnum priority, int limit, long maxExpectedWait) {
+            this.priority = priority;
+            this.limit = limit;
+            this.maxExpectedWait = maxExpectedWait;
+        }
+
+        void offer(Job job, int weight, long sequence) {
+            double startTag = Math.max(virtualTime, flowFinishTags.getOrDefault(job.flow, 0D));
+            // 预期耗时至少按 1ms 计算，保证同一流的提交按顺序执行
+            job.finishTag = startTag + (double) Math.max(1, job.cost) / weight;
+            job.sequence = sequence;
+            job.enqueueTime = System.currentTimeMillis();
+            flowFinishTags.put(job.flow, job.finishTag);
+            queuedCost += job.cost;
+            queue.offer(job);
+        }
+
+        void reserve(Job job) {
+            reserved++;
+            queuedCost += job.cost;
+        }
+
+        void release(Job job) {
+            reserved--;
+            queuedCost -= job.cost;
+        }
+
+        Job poll() {
+            Job job = queue.poll();
+            if (job == null) {
+                return null;
+            }
+            virtualTime = job.finishTag;
+            queuedCost -= job.cost;
+            // 结束时间不晚于当前虚拟时间的记录与不存在等价
+            if (flowFinishTags.size() > FLOW_CLEAN_THRESHOLD) {
+                flowFinishTags.values().removeIf(finishTag -> finishTag <= virtualTime);
+            }
+            long wait = System.currentTimeMillis() - job.enqueueTime;
+            dispatched++;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+            return job;
+        }
+    }
+}
@@ -2,36 +2,47 @@ package com.luoying.core.template;
 
 import cn.hutool.core.date.StopWatch;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.dfa.FoundWord;
 import cn.hutool.dfa.WordTree;
 import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.ExecCreateCmdResponse;
-import com.github.dockerjava.api.command.InspectContainerResponse;
-import com.github.dockerjava.api.command.StatsCmd;
-import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.Frame;
-import com.github.dockerjava.api.model.Statistics;
 import com.github.dockerjava.api.model.StreamType;
-import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.command.ExecStartResultCallback;
 import com.luoying.core.CodeSandBox;
+import com.luoying.core.ExecuteCodeListener;
+import com.luoying.core.cache.CompileCache;
+import com.luoying.core.compiler.CompileExecutor;
+import com.luoying.core.monitor.ContainerMemoryMonitor;
+import com.luoying.core.monitor.DockerApiMetrics;
+import com.luoying.core.monitor.MemoryProbe;
+import com.luoying.core.pool.ContainerLease;
+import com.luoying.core.pool.ContainerPool;
+import com.luoying.exception.ContainerAcquireTimeoutException;
 import com.luoying.exception.MemoryLimitExceededException;
+import com.luoying.exception.OutputLimitExceededException;
 import com.luoying.exception.TimeLimitExceededException;
 import com.luoying.model.*;
 import com.luoying.model.enums.JudgeInfoMessagenum;
-import com.luoying.utils.ProcessUtil;
-import lombok.SneakyThrows;
+import com.luoying.utils.BoundedOutputBuffer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.Resource;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.luoying.model.enums.JudgeInfoMessagenum.*;
 
@@ -53,6 +64,19 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
     // 最大内存 K
     private static final long MEMORYOUT = 120000L;
 
+    // 最大输出 K（标准输出、错误输出分别计算）
+    @Value("${sandbox.output.limit:65536}")
+    private long outputOut;
+
+    // 容器内的用例执行器
+    private static final String RUNNER = "sandbox-runner";
+
+    // 程序被 SIGXFSZ（超过 ulimit -f）终止时的退出码：128 + 25
+    private static final int SIGXFSZ_EXIT_VALUE = 153;
+
+    // 输入用例目录名称
+    private static final String CASE_DIR_NAME = "cases";
+
     // 字典树
     private static final WordTree WORD_TREE;
 
@@ -62,6 +86,46 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
     }
 
 
+    // 共享的DockerClient
+    @Resource
+    private DockerClient dockerClient;
+
+    // 容器池
+    @Resource
+    private ContainerPool containerPool;
+
+    // 容器内存监控
+    @Resource
+    private ContainerMemoryMonitor containerMemoryMonitor;
+
+    // Docker API 调用统计
+    @Resource
+    private DockerApiMetrics dockerApiMetrics;
+
+    // 编译缓存
+    @Resource
+    private CompileCache compileCache;
+
+    // 编译执行器（编译容器池）
+    @Resource
+    private CompileExecutor compileExecutor;
+
+    // 是否使用容器内的用例执行器（一次 exec 执行所有用例）
+    @Value("${sandbox.runner.enabled:true}")
+    private boolean runnerEnabled;
+
+    // 一次提交最多同时使用的容器数（输入用例分片并行执行）
+    @Value("${sandbox.run.parallelism:1}")
+    private int parallelism;
+
+    // 每个分片最少的输入用例数（用例较少时不值得额外占用容器）
+    @Value("${sandbox.run.min-cases-per-shard:4}")
+    private int minCasesPerShard;
+
+    // 并行执行输入用例的线程池
+    @Resource
+    private ThreadPoolExecutor caseThreadPoolExecutor;
+
     protected DockerCodeSandBoxTemplate(String codeFileName) {
         this.codeFileName = codeFileName;
     }
@@ -75,6 +139,33 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
      */
     protected abstract CodeSandBoxCmd getCmd(String userCodeParentDirName, String userCodePath);
 
+    /**
+     * 根据请求构造编译以及运行的cmd（子类可以覆盖，例如按运行配置选择参数）
+     *
+     * @param userCodeParentDirName 用户代码文件父目录的名称
+     * @param userCodePath          用户代码文件的绝对路径
+     * @param executeCodeRequest    执行代码请求
+     * @return {@link CodeSandBoxCmd}
+     */
+    protected CodeSandBoxCmd getCmd(String userCodeParentDirName, String userCodePath, ExecuteCodeRequest executeCodeRequest) {
+        return getCmd(userCodeParentDirName, userCodePath);
+    }
+
+    /**
+     * 用例执行器是否通过 ulimit -v 限制每个用例的地址空间（上限为 MEMORYOUT），
+     * 启动时预留大量地址空间的运行时（JVM、V8）覆盖为 false，由自身的堆参数或者容器的 cgroup 限制
+     */
+    protected boolean limitAddressSpace() {
+        return true;
+    }
+
+    /**
+     * 编译命令之外影响编译产物的选项（计入编译缓存键），不通过编译命令编译的子类需要覆盖
+     */
+    protected String compileOptions() {
+        return "";
+    }
+
     /**
      * 执行代码
      *
@@ -83,6 +174,18 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
      */
     @Override
     public ExecuteCodeResponse executeCode(ExecuteCodeRequest executeCodeRequest) {
+        return executeCode(executeCodeRequest, ExecuteCodeListener.NOOP);
+    }
+
+    /**
+     * 执行代码，并通过监听器返回编译结果和每个用例的执行结果
+     *
+     * @param executeCodeRequest 执行代码请求
+     * @param listener           {@link ExecuteCodeListener}
+     * @return {@link ExecuteCodeResponse 执行代码响应}
+     */
+    @Override
+    public ExecuteCodeResponse executeCode(ExecuteCodeRequest executeCodeRequest, ExecuteCodeListener listener) {
         File userCodeFile = null;
         ExecuteCodeResponse executeCodeResponse = null;
         try {
@@ -106,27 +209,46 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
             String userCodeParentDirName = userCodeFile.getParentFile().getName();
 
             // 获取编译命令和执行命令
-            CodeSandBoxCmd sandBoxCmd = getCmd(userCodeParentDirName, userCodePath);
+            CodeSandBoxCmd sandBoxCmd = getCmd(userCodeParentDirName, userCodePath, executeCodeRequest);
             String compileCmd = sandBoxCmd.getCompileCmd();
-            String runCmd = sandBoxCmd.getRunCmd();
+            List<String> runArgs = sandBoxCmd.getRunArgs();
 
             if (compileCmd != null) { // 有些语言不需要编译
-                // 2. 编译代码
-                ExecuteMessage compileCodeFileExecuteMessage = compileCode(compileCmd);
-                if (StrUtil.isNotBlank(compileCodeFileExecuteMessage.getErrorMessage())) {
-                    return getCompileCodeErrorResponse(compileCodeFileExecuteMessage);
+                // 相同的代码编译过，直接使用缓存的编译产物
+                String compileCacheKey = compileCache.key(ClassUtils.getUserClass(this).getSimpleName(), compileCmd, compileOptions(), userCodeFile.getParentFile(), code);
+                if (compileCache.restore(compileCacheKey, userCodeFile.getParentFile())) {
+                    log.info("命中编译缓存 key={}", compileCacheKey);
+                    listener.onCompiled(getCompileSkippedMessage());
+                } else {
+                    // 2. 编译代码
+                    ExecuteMessage compileCodeFileExecuteMessage = compileCode(compileCmd, userCodeFile, code);
+                    listener.onCompiled(compileCodeFileExecuteMessage);
+                    if (StrUtil.isNotBlank(compileCodeFileExecuteMessage.getErrorMessage())) {
+                        return getCompileCodeErrorResponse(compileCodeFileExecuteMessage);
+                    }
+                    log.info("编译信息:{}", compileCodeFileExecuteMessage);
+                    compileCache.store(compileCacheKey, userCodeFile.getParentFile(), codeFileName);
                 }
-                log.info("编译信息:{}", compileCodeFileExecuteMessage);
+            } else {
+                listener.onCompiled(getCompileSkippedMessage());
             }
 
             // 3. 执行代码，得到输出结果
             List<ExecuteMessage> executeMessageList = null;
+            // 记录提交次数，用于统计每次提交的 Docker API 调用次数
+            dockerApiMetrics.recordSubmission();
             try {
-                executeMessageList = runCodeFile(inputList, runCmd, userCodeFile.getParentFile().getParentFile().getAbsolutePath());
+                if (runnerEnabled) {
+                    executeMessageList = runCodeFileWithRunner(inputList, runArgs, userCodeFile.getParentFile(), listener);
+                } else {
+                    executeMessageList = runCodeFile(inputList, runArgs, userCodeFile.getParentFile(), listener);
+                }
             } catch (TimeLimitExceededException e) {
                 return getTimeExceededErrorResponse(Long.valueOf(e.getMessage()));
             } catch (MemoryLimitExceededException e) {
                 return getMemoryExceededErrorResponse((Long.valueOf(e.getMessage())));
+            } catch (OutputLimitExceededException e) {
+                return getOutputExceededErrorResponse();
             }
             for (ExecuteMessage executeMessage : executeMessageList) {
                 log.info("运行信息:{}", executeMessage);
@@ -138,6 +260,9 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
             // 4. 收集整理输出结果
             executeCodeResponse = getOutputResponse(executeMessageList);
 
+        } catch (ContainerAcquireTimeoutException e) {
+            // 容器繁忙，交给调用方稍后重试（不是判题结果）
+            throw e;
         } catch (Exception e) {
             log.info(e.getMessage());
         } finally {
@@ -150,6 +275,16 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
         return executeCodeResponse;
     }
 
+    /**
+     * 获取编译信息（不需要编译或者命中编译缓存）
+     */
+    private static ExecuteMessage getCompileSkippedMessage() {
+        ExecuteMessage executeMessage = new ExecuteMessage();
+        executeMessage.setExitValue(0);
+        executeMessage.setTime(0L);
+        return executeMessage;
+    }
+
     /**
      * 获取执行代码响应（保存代码失败）
      */
@@ -166,9 +301,12 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
      */
     private ExecuteCodeResponse getCompileCodeErrorResponse(ExecuteMessage executeMessage) {
         int index = executeMessage.getErrorMessage().indexOf(codeFileName, 0);
-        String userCodeParentPath = executeMessage.getErrorMessage().substring(0, index);
-        // 去除错误信息中的系统路径
-        String errormessage = executeMessage.getErrorMessage().replace(userCodeParentPath, "");
+        String errormessage = executeMessage.getErrorMessage();
+        if (index > 0) {
+            // 去除错误信息中的系统路径
+            String userCodeParentPath = executeMessage.getErrorMessage().substring(0, index);
+            errormessage = executeMessage.getErrorMessage().replace(userCodeParentPath, "");
+        }
         QuestionSubmitJudgeInfo judgeInfo = new QuestionSubmitJudgeInfo();
         judgeInfo.setMessage(errormessage);
         judgeInfo.setTime(-1L);
@@ -209,6 +347,17 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
         return ExecuteCodeResponse.builder().outputList(null).message(MEMORY_LIMIT_EXCEEDED.getValue()).status(3).judgeInfo(judgeInfo).build();
     }
 
+    /**
+     * 获取执行代码响应（输出超限）
+     */
+    private ExecuteCodeResponse getOutputExceededErrorResponse() {
+        QuestionSubmitJudgeInfo judgeInfo = new QuestionSubmitJudgeInfo();
+        judgeInfo.setMessage(OUTPUT_LIMIT_EXCEEDED.getValue());
+        judgeInfo.setTime(-1L);
+        judgeInfo.setMemory(-1L);
+        return ExecuteCodeResponse.builder().outputList(null).message(OUTPUT_LIMIT_EXCEEDED.getValue()).status(3).judgeInfo(judgeInfo).build();
+    }
+
 
     /**
      * 1. 保存用户代码到文件中
@@ -243,6 +392,18 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
         return FileUtil.writeString(code, userCodePath, StandardCharsets.UTF_8);
     }
 
+    /**
+     * 2. 编译代码（子类可以覆盖，例如使用进程内的编译器）
+     *
+     * @param compileCmd   编译命令
+     * @param userCodeFile 用户代码文件
+     * @param code         代码
+     * @return {@link ExecuteMessage}
+     */
+    protected ExecuteMessage compileCode(String compileCmd, File userCodeFile, String code) {
+        return compileCode(compileCmd);
+    }
+
     /**
      * 2. 编译代码
      *
@@ -250,212 +411,580 @@ public abstract class DockerCodeSandBoxTemplate implements CodeSandBox {
      * @return {@link ExecuteMessage}
      */
     public ExecuteMessage compileCode(String compileCmd) {
-        try {
-            // 获取编译的Process
-            Process compileProcess = Runtime.getRuntime().exec(compileCmd);
-            // 返回编译结果
-            return ProcessUtil.runProcessAndGetMessage(compileProcess, "编译");
-        } catch (Exception e) {
-            log.error("compile Exception:{}", e);
-            throw new RuntimeException(e);
-        }
+        return compileCode(compileCmd, null);
     }
 
     /**
-     * 3. 执行代码文件，获得执行结果列表
+     * 2. 编译代码（附加环境变量，例如编译缓存目录）
+     * 启用编译容器池时在编译容器中执行，否则在宿主机上执行
+     *
+     * @param compileCmd 编译命令
+     * @param env        附加的环境变量
+     * @return {@link ExecuteMessage}
+     */
+    public ExecuteMessage compileCode(String compileCmd, Map<String, String> env) {
+        return compileExecutor.compile(compileCmd, env);
+    }
+
+    /**
+     * 3. 执行代码文件（逐个用例 exec 模式），获得执行结果列表
      *
      * @param inputList  输入用例
-     * @param runCmd     运行的cmd
-     * @param secDirPath 二级目录
+     * @param runArgs    运行命令的参数
+     * @param userCodeParentDir 用户代码父目录
      * @return {@link List<ExecuteMessage>}
      */
-    public List<ExecuteMessage> runCodeFile(List<String> inputList, String runCmd, String secDirPath) throws InterruptedException, IOException {
-        DockerClient dockerClient = DockerClientBuilder.getInstance().build();
-        // 1.启动容器
-        // 获取所有容器（包括未启动的）
-        List<Container> containers = dockerClient.listContainersCmd().withShowAll(true).exec();
-        // 根据线程名称判断容器是否存在（容器的实际名称：/自定义名称）
-        Optional<Container> containerOptional = containers.stream().filter(container -> Arrays.asList(container.getNames()).contains("/" + Thread.currentThread().getName())).findFirst();
-        String containerId;
-        // 获取容器
-        Container container = containerOptional.get();
-        // 判断容器是否启动，未启动则手动启动
-        if (!"running".equals(container.getState())) {
-            dockerClient.startContainerCmd(container.getId()).exec();
-        }
-        // 记录容器id
-        containerId = container.getId();
-
-        CountDownLatch statsLatch = new CountDownLatch(1);
-        // 获取占用的内存
-        final long[] maxMemory = {0L};
-        final long[] minMemory = {Long.MAX_VALUE};
-        // 容器状态命令
-        StatsCmd statsCmd = dockerClient.statsCmd(containerId);
-        // 实时获取容器内存的回调函数
-        ResultCallback<Statistics> statisticsResultCallback = statsCmd.exec(new ResultCallback<Statistics>() {
-            @SneakyThrows
-            @Override
-            public void onNext(Statistics statistics) {
-                // 使用 inspectContainerCmd 获取容器详细信息
-                InspectContainerResponse containerInfo = dockerClient.inspectContainerCmd(containerId).exec();
-                // 获取容器状态
-                String containerStatus = containerInfo.getState().getStatus();
-                if ("running".equalsIgnoreCase(containerStatus)) {
-                    Long maxUsage = statistics.getMemoryStats().getMaxUsage();
-                    log.info("内存占用：" + maxUsage / 1024);
-                    maxMemory[0] = Math.max(maxMemory[0], maxUsage / 1024);
-                    minMemory[0] = Math.min(minMemory[0], maxUsage / 1024);
-                    log.info("maxUsage: {},  maxMemory: {},  minMemory: {}", maxUsage, maxMemory[0], minMemory[0]);
-                } else {
-                    log.info("容器状态:{}", containerStatus);
-                }
-            }
+    public List<ExecuteMessage> runCodeFile(List<String> inputList, List<String> runArgs, File userCodeParentDir) throws InterruptedException {
+        return runCodeFile(inputList, runArgs, userCodeParentDir, ExecuteCodeListener.NOOP);
+    }
 
-            @Override
-            public void onStart(Closeable closeable) {
+    /**
+     * 3. 执行代码文件（逐个用例 exec 模式），每个用例结束后通知监听器
+     *
+     * @param inputList  输入用例
+     * @param runArgs    运行命令的参数
+     * @param userCodeParentDir 用户代码父目录
+     * @param listener          {@link ExecuteCodeListener}
+     * @return {@link List<ExecuteMessage>}
+     */
+    public List<ExecuteMessage> runCodeFile(List<String> inputList, List<String> runArgs, File userCodeParentDir, ExecuteCodeListener listener) throws InterruptedException {
+        return runInShards(inputList, (lease, from, to, firstFailure) -> runCases(lease, inputList, from, to, runArgs, userCodeParentDir, firstFailure, listener));
+    }
 
-            }
+    /**
+     * 在租借的容器中逐个执行 [from, to) 范围内的输入用例
+     *
+     * @param lease     容器租约（由调用方归还）
+     * @param inputList 输入用例
+     * @param from      起始下标（包含）
+     * @param to        结束下标（不包含）
+     * @param runArgs           运行命令的参数
+     * @param userCodeParentDir 用户代码父目录
+     * @param firstFailure      各分片共享的第一个失败用例（之后的用例不再执行）
+     * @param listener          {@link ExecuteCodeListener}
+     * @return {@link List<ExecuteMessage>}
+     */
+    private List<ExecuteMessage> runCases(ContainerLease lease, List<String> inputList, int from, int to, List<String> runArgs, File userCodeParentDir,
+                                          FirstFailure firstFailure, ExecuteCodeListener listener) throws InterruptedException, IOException {
+        // 记录容器id
+        String containerId = lease.getContainerId();
 
-            @Override
-            public void onError(Throwable throwable) {
-                log.info("内存统计异常:{}", throwable.getMessage());
-            }
+        try {
+            // 4.执行命令并获取结果
+            // 例子：docker exec code_sandbox sh -c 'exec "$@" < "$0"' 输入文件 运行命令的参数...
+            // 输入用例写入挂载目录中的文件，由 sh 重定向为程序的标准输入后 exec 为程序本身（不额外 fork），
+            // 程序读到文件末尾即为 EOF；输入文件、运行命令的参数都作为位置参数传入，不经过 shell 拆分
+            List<ExecuteMessage> executeMessageList = new ArrayList<>();
+            for (int i = from; i < to && !firstFailure.skips(i); i++) {
+                if (listener.isCancelled()) {
+                    // 已取消，所有分片的用例都不再执行
+                    firstFailure.cancelAll();
+                    break;
+                }
+                // 每个提交写入自己的输入文件（用户程序对挂载目录有写权限）
+                String caseFileName = CASE_DIR_NAME + "/" + (i + 1) + ".in";
+                FileUtil.writeString(inputList.get(i) + "\n", new File(userCodeParentDir, caseFileName), StandardCharsets.UTF_8);
+                // 为每个输入用例的执行计时
+                StopWatch stopWatch = new StopWatch();
+                // 构造执行命令（输入用例不拼接到命令中）
+                List<String> commandList = new ArrayList<>(Arrays.asList("sh", "-c", "exec \"$@\" < \"$0\"", "/app/" + userCodeParentDir.getName() + "/" + caseFileName));
+                commandList.addAll(runArgs);
+                String[] command = commandList.toArray(new String[0]);
+                ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(containerId).withCmd(command).withAttachStderr(true).withAttachStdout(true).exec();
+                log.info("创建执行命令：" + Arrays.toString(command));
+                // 执行信息
+                ExecuteMessage executeMessage = new ExecuteMessage();
+                // 按原始字节累积输出，执行结束后再解码
+                BoundedOutputBuffer message = BoundedOutputBuffer.obtain(outputOut * 1024);
+                BoundedOutputBuffer errorMessage = BoundedOutputBuffer.obtain(outputOut * 1024);
+                // 每个输入用例的执行时间
+                long time = 0L;
+                // 判断是否超时
+                boolean[] isTimeOut = new boolean[]{true};
+                // 执行命令的id（用于定位我们要执行的命令）
+                String execId = execCreateCmdResponse.getId();
+                // 执行命令时的回调函数（明确我们在执行完命令后的操作）
+                ExecStartResultCallback execStartResultCallback = new ExecStartResultCallback(System.out, System.err) {
+                    @Override
+                    public void onNext(Frame frame) {
+                        BoundedOutputBuffer buffer = StreamType.STDERR.equals(frame.getStreamType()) ? errorMessage : message;
+                        if (!buffer.write(frame.getPayload())) {
+                            // 输出超限，中止执行
+                            log.info("程序输出超限");
+                            try {
+                                close();
+                            } catch (IOException e) {
+                                log.error("中止执行失败", e);
+                            }
+                        }
+                    }
 
-            @Override
-            public void onComplete() {
+                    @Override
+                    public void onComplete() {
+                        isTimeOut[0] = false;
+                        super.onComplete();
+                    }
+                };
+                // 前面的用例失败时中止执行中的用例
+                firstFailure.register(i, execStartResultCallback);
                 try {
-                    // 进入阻塞队列挂起，等待主线程关闭容器后唤醒
-                    statsLatch.await();
-                    // 关闭内存统计命令
-                    log.info("关闭内存统计");
-                    statsCmd.close();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    // 开始监控内存（读取容器cgroup，不阻塞执行）
+                    MemoryProbe memoryProbe = containerMemoryMonitor.start(containerId);
+                    long memory;
+                    try {
+                        // 开始计时
+                        stopWatch.start();
+                        // 执行命令
+                        dockerClient.execStartCmd(execId).exec(execStartResultCallback).awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
+                        // 结束计时
+                        stopWatch.stop();
+                        // 获取本次执行的峰值内存
+                        memory = memoryProbe.stop();
+                    } finally {
+                        memoryProbe.close();
+                    }
+                    time = stopWatch.getLastTaskTimeMillis();
+                    if (firstFailure.skips(i)) {
+                        // 被中止的用例仍在容器内运行，归还时需要重启容器
+                        lease.markBroken();
+                        break;
+                    }
+                    if (message.isOverflow() || errorMessage.isOverflow()) {
+                        // 程序仍在容器内输出，归还时需要重启容器
+                        lease.markBroken();
+                        throw new OutputLimitExceededException(String.valueOf(outputOut));
+                    }
+                    if (time >= TIMEOUT) {
+                        log.info("程序执行超时{}", time);
+                        // 超时的进程仍在容器内运行，归还时需要重启容器
+                        lease.markBroken();
+                        throw new TimeLimitExceededException(String.valueOf(time));
+                    }
+                    if (memory >= MEMORYOUT) {
+                        log.info("程序内存溢出");
+                        lease.markBroken();
+                        throw new MemoryLimitExceededException(String.valueOf(memory));
+                    }
+
+                    // 封装单个用例的执行结果
+                    executeMessage.setMessage(message.toString(true));// 去掉最后的\n符
+                    executeMessage.setErrorMessage(errorMessage.toString());
+                    executeMessage.setTime(time);
+                    log.info("单个用例的内存消耗:{}", memory);
+                    executeMessage.setMemory(memory);
+                } finally {
+                    firstFailure.unregister(execStartResultCallback);
+                    // 先中止接收输出，再归还缓冲区（超时、超限或者出错时回调可能仍在写入）
+                    IoUtil.close(execStartResultCallback);
+                    message.recycle();
+                    errorMessage.recycle();
+                }
+                log.info("输出结果:{}", executeMessage.getMessage());
+                executeMessageList.add(executeMessage);
+                listener.onCaseFinished(i, executeMessage);
+                if (StrUtil.isNotBlank(executeMessage.getErrorMessage())) {
+                    // 用例运行出错，之后的用例不再执行
+                    firstFailure.mark(i);
+                    break;
                 }
             }
+            // 返回
+            return executeMessageList;
+        } catch (TimeLimitExceededException | MemoryLimitExceededException | OutputLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            // 执行过程中出现异常，容器状态未知，归还时重启（容器由 ShardTask.runAndRelease 归还）
+            lease.markBroken();
+            throw e;
+        }
+    }
 
-            @Override
-            public void close() throws IOException {
+    /**
+     * 3. 执行代码文件（用例执行器模式），获得执行结果列表
+     * 把所有输入用例写入文件，通过一次 exec 由容器内的 sandbox-runner 依次执行，
+     * 输出直接写在挂载目录中，exec 只返回每个用例一行的执行结果
+     *
+     * @param inputList         输入用例
+     * @param runArgs           运行命令的参数
+     * @param userCodeParentDir 用户代码父目录
+     * @return {@link List<ExecuteMessage>}
+     */
+    public List<ExecuteMessage> runCodeFileWithRunner(List<String> inputList, List<String> runArgs, File userCodeParentDir) throws InterruptedException {
+        return runCodeFileWithRunner(inputList, runArgs, userCodeParentDir, ExecuteCodeListener.NOOP);
+    }
+
+    /**
+     * 3. 执行代码文件（用例执行器模式），每个用例结束后通知监听器
+     *
+     * @param inputList         输入用例
+     * @param runArgs           运行命令的参数
+     * @param userCodeParentDir 用户代码父目录
+     * @param listener          {@link ExecuteCodeListener}
+     * @return {@link List<ExecuteMessage>}
+     */
+    public List<ExecuteMessage> runCodeFileWithRunner(List<String> inputList, List<String> runArgs, File userCodeParentDir, ExecuteCodeListener listener) throws InterruptedException {
+        return runInShards(inputList, (lease, from, to, firstFailure) -> runCasesWithRunner(lease, inputList, from, to, runArgs, userCodeParentDir, firstFailure, listener));
+    }
 
+    /**
+     * 在租借的容器中通过一次 exec 执行 [from, to) 范围内的输入用例
+     *
+     * @param lease             容器租约（由调用方归还）
+     * @param inputList         输入用例
+     * @param from              起始下标（包含）
+     * @param to                结束下标（不包含）
+     * @param runArgs           运行命令的参数
+     * @param userCodeParentDir 用户代码父目录
+     * @param firstFailure      各分片共享的第一个失败用例（之后的用例不再执行）
+     * @param listener          {@link ExecuteCodeListener}
+     * @return {@link List<ExecuteMessage>}
+     */
+    private List<ExecuteMessage> runCasesWithRunner(ContainerLease lease, List<String> inputList, int from, int to, List<String> runArgs, File userCodeParentDir,
+                                                    FirstFailure firstFailure, ExecuteCodeListener listener) throws InterruptedException {
+        try {
+            if (firstFailure.skips(from)) {
+                return new ArrayList<>();
             }
-        });
+            // 1.把输入用例写入 项目目录/顶级目录/UUID/cases/起始下标 目录（每个分片一个目录）
+            String shardDirName = CASE_DIR_NAME + "/" + from;
+            File caseDir = new File(userCodeParentDir, shardDirName);
+            List<String> caseNames = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                String caseName = String.valueOf(i + 1);
+                // 每个提交写入自己的副本：用户程序对挂载目录有写权限，不能与其他提交共用文件
+                FileUtil.writeString(inputList.get(i) + "\n", new File(caseDir, caseName + ".in"), StandardCharsets.UTF_8);
+                caseNames.add(caseName);
+            }
+            FileUtil.writeLines(caseNames, new File(caseDir, "manifest"), StandardCharsets.UTF_8);
 
-        // 开始内存统计（Docker容器的守护线程会一直实时获取容器的内存）
-        statsCmd.exec(statisticsResultCallback);
-        // 4.执行命令并获取结果
-        // 例子：docker exec code_sandbox sh -c echo 'input' | runCmd
-        List<ExecuteMessage> executeMessageList = new ArrayList<>();
-        Boolean isSleep = false;
-        for (String input : inputList) {
-            // 为每个输入用例的执行计时
-            StopWatch stopWatch = new StopWatch();
-            input = "'" + input + "'";
-            // 构造执行命令
-            String[] command = {"sh", "-c", "echo " + input + " | " + runCmd};
-            ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(containerId).withCmd(command).withAttachStderr(true).withAttachStdin(true).withAttachStdout(true).exec();
-            log.info("创建执行命令：" + Arrays.toString(command));
-            // 执行信息
-            ExecuteMessage executeMessage = new ExecuteMessage();
-            final String[] message = {""};
-            final String[] errorMessage = {""};
-            // 每个输入用例的执行时间
-            long time = 0L;
-            // 判断是否超时
-            boolean[] isTimeOut = new boolean[]{true};
-            // 执行命令的id（用于定位我们要执行的命令）
-            String execId = execCreateCmdResponse.getId();
-            // 执行命令时的回调函数（明确我们在执行完命令后的操作）
+            // 2.构造执行命令：sandbox-runner 用例目录 时间限制 内存限制 输出限制 运行命令...
+            List<String> command = new ArrayList<>(Arrays.asList(RUNNER, "/app/" + userCodeParentDir.getName() + "/" + shardDirName,
+                    String.valueOf(TIMEOUT), String.valueOf(limitAddressSpace() ? MEMORYOUT : 0), String.valueOf(outputOut)));
+            command.addAll(runArgs);
+
+            // 3.执行分片内的所有用例
+            String containerId = lease.getContainerId();
+            ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(containerId).withCmd(command.toArray(new String[0])).withAttachStderr(true).withAttachStdout(true).exec();
+            log.info("创建执行命令：" + command);
+            // 执行器每执行完一个用例输出一行结果，完整的行立即解析并通知监听器
+            StringBuilder resultLines = new StringBuilder();
+            List<ExecuteMessage> executeMessageList = new ArrayList<>();
+            // 已解析的长度、解析时遇到的超限（执行器结束后再抛出）、是否被监听器取消
+            int[] parsedLength = {0};
+            RuntimeException[] limitExceeded = {null};
+            boolean[] listenerCancelled = {false};
             ExecStartResultCallback execStartResultCallback = new ExecStartResultCallback(System.out, System.err) {
                 @Override
                 public void onNext(Frame frame) {
-                    StreamType streamType = frame.getStreamType();
-                    if (StreamType.STDERR.equals(streamType)) {
-                        errorMessage[0] += new String(frame.getPayload(), StandardCharsets.UTF_8);
-                        log.info("输出错误结果:{}", errorMessage[0]);
-                    } else {
-                        message[0] += new String(frame.getPayload(), StandardCharsets.UTF_8);
-                        if (message[0].charAt(message[0].length() - 1) == '\n') {
-                            message[0] = message[0].substring(0, message[0].length() - 1);// 去掉最后的\n符
+                    if (!StreamType.STDOUT.equals(frame.getStreamType())) {
+                        log.info("用例执行器输出:{}", new String(frame.getPayload(), StandardCharsets.UTF_8));
+                        return;
+                    }
+                    resultLines.append(new String(frame.getPayload(), StandardCharsets.UTF_8));
+                    int end;
+                    while ((end = resultLines.indexOf("\n", parsedLength[0])) >= 0) {
+                        String line = resultLines.substring(parsedLength[0], end);
+                        parsedLength[0] = end + 1;
+                        parseResultLine(line, caseDir, executeMessageList, limitExceeded, firstFailure, listener);
+                    }
+                    if (listener.isCancelled()) {
+                        // 不再等待剩余的用例，执行器仍在容器内运行，归还时需要重启容器；其他分片也一起中止
+                        listenerCancelled[0] = true;
+                        firstFailure.cancelAll();
+                        try {
+                            close();
+                        } catch (IOException e) {
+                            log.error("中止执行失败", e);
                         }
-                        log.info("输出结果:{}", message[0]);
                     }
-                    super.onNext(frame);
-                }
-
-                @Override
-                public void onComplete() {
-                    isTimeOut[0] = false;
-                    super.onComplete();
                 }
             };
-            // 执行命令
+            // 每个用例最多执行 TIMEOUT（执行器会多留1秒），再加上整体的启动开销
+            long awaitTime = (to - from) * (TIMEOUT + 1000L) + 5000L;
+            // 前面分片的用例失败时中止整个分片
+            firstFailure.register(from, execStartResultCallback);
+            boolean completed;
             try {
-                // 开始计时
-                stopWatch.start();
-                // 执行命令
-                dockerClient.execStartCmd(execId).exec(execStartResultCallback).awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
-                // 结束计时
-                stopWatch.stop();
-                time = stopWatch.getLastTaskTimeMillis();
-                if (!isSleep) {
-                    Thread.sleep(1000);
-                    isSleep = true;
-                }
-                if (time >= TIMEOUT) {
-                    log.info("超时{}", time);
-                    throw new TimeLimitExceededException(TIME_LIMIT_EXCEEDED.getValue());
-                }
-                if (maxMemory[0] - minMemory[0] >= MEMORYOUT) {
-                    log.info("溢出");
-                    throw new MemoryLimitExceededException(MEMORY_LIMIT_EXCEEDED.getValue());
-                }
-            } catch (TimeLimitExceededException e) {
-                log.info("程序执行超时");
-                // 唤醒阻塞队列所有线程
-                statsLatch.countDown();
-                // 执行完所有输入用例后关闭容器
-                dockerClient.stopContainerCmd(containerId).exec();
-                // 关闭dockerClient
-                dockerClient.close();
-                throw new TimeLimitExceededException(String.valueOf(time));
-            } catch (MemoryLimitExceededException e) {
-                log.info("程序内存溢出");
-                // 唤醒阻塞队列所有线程
-                statsLatch.countDown();
-                // 执行完所有输入用例后关闭容器
-                dockerClient.stopContainerCmd(containerId).exec();
-                // 关闭dockerClient
-                dockerClient.close();
-                throw new MemoryLimitExceededException(String.valueOf(maxMemory[0] - minMemory[0]));
+                completed = dockerClient.execStartCmd(execCreateCmdResponse.getId()).exec(execStartResultCallback).awaitCompletion(awaitTime, TimeUnit.MILLISECONDS);
+            } finally {
+                firstFailure.unregister(execStartResultCallback);
+            }
+            if (listenerCancelled[0]) {
+                lease.markBroken();
+                throw new RuntimeException("执行已取消");
+            }
+            if (firstFailure.skips(from)) {
+                // 执行器仍在容器内运行，归还时需要重启容器；结果不完整，合并时在这个分片结束
+                lease.markBroken();
+                IoUtil.close(execStartResultCallback);
+                return executeMessageList;
+            }
+            if (!completed) {
+                log.info("用例执行器超时");
+                lease.markBroken();
+                throw new TimeLimitExceededException(String.valueOf(awaitTime));
+            }
+            // 最后一行可能没有换行符
+            parseResultLine(resultLines.substring(parsedLength[0]), caseDir, executeMessageList, limitExceeded, firstFailure, listener);
+            if (limitExceeded[0] != null) {
+                throw limitExceeded[0];
             }
 
-            // 封装单个用例的执行结果
-            executeMessage.setMessage(message[0]);
-            executeMessage.setErrorMessage(errorMessage[0]);
-            executeMessage.setTime(time);
-            log.info("单个用例的内存消耗:{}", maxMemory[0] - minMemory[0]);
-            executeMessage.setMemory(maxMemory[0] - minMemory[0]);
-            executeMessageList.add(executeMessage);
+            if (executeMessageList.size() < to - from && (executeMessageList.isEmpty() || executeMessageList.get(executeMessageList.size() - 1).getExitValue() == 0)) {
+                // 执行器没有输出全部结果，也不是因为用例失败而提前结束
+                lease.markBroken();
+                throw new RuntimeException("用例执行器异常");
+            }
+            return executeMessageList;
+        } catch (TimeLimitExceededException | MemoryLimitExceededException | OutputLimitExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            // 执行过程中出现异常，容器状态未知，归还时重启（容器由 ShardTask.runAndRelease 归还）
+            lease.markBroken();
+            throw e;
         }
+    }
 
-        // 唤醒阻塞队列所有线程
-        statsLatch.countDown();
+    /**
+     * 解析执行器的一行结果：<name> <退出码> <耗时ms> <峰值内存KB> <输出字节数> <输出sha256>
+     * 超限时记录下来（执行器结束后抛出），之后的结果不再解析
+     *
+     * @param line               一行结果
+     * @param caseDir            用例目录
+     * @param executeMessageList 执行信息列表
+     * @param limitExceeded      解析时遇到的超限
+     * @param firstFailure       各分片共享的第一个失败用例
+     * @param listener           {@link ExecuteCodeListener}
+     */
+    private void parseResultLine(String line, File caseDir, List<ExecuteMessage> executeMessageList, RuntimeException[] limitExceeded,
+                                 FirstFailure firstFailure, ExecuteCodeListener listener) {
+        if (StrUtil.isBlank(line) || limitExceeded[0] != null) {
+            return;
+        }
+        String[] fields = line.trim().split(" ");
+        String caseName = fields[0];
+        int exitValue = Integer.parseInt(fields[1]);
+        long time = Long.parseLong(fields[2]);
+        long memory = Long.parseLong(fields[3]);
+        long outputBytes = Long.parseLong(fields[4]);
+        log.info("用例{} 退出码:{} 耗时:{} 内存:{} 输出:{}字节 sha256:{}", caseName, exitValue, time, memory, outputBytes, fields[5]);
+        if (exitValue == SIGXFSZ_EXIT_VALUE || outputBytes >= outputOut * 1024) {
+            // 超过 ulimit -f 后程序收到 SIGXFSZ，或被截断的输出已写满上限
+            log.info("程序输出超限");
+            limitExceeded[0] = new OutputLimitExceededException(String.valueOf(outputBytes));
+            return;
+        }
+        if (time >= TIMEOUT) {
+            log.info("程序执行超时{}", time);
+            limitExceeded[0] = new TimeLimitExceededException(String.valueOf(time));
+            return;
+        }
+        String errorMessage = FileUtil.readString(new File(caseDir, caseName + ".err"), StandardCharsets.UTF_8);
+        if (memory >= MEMORYOUT || (exitValue != 0 && limitAddressSpace() && isAllocationFailure(errorMessage))) {
+            // 超过 ulimit -v 时分配失败，常驻内存不一定达到上限
+            log.info("程序内存溢出");
+            limitExceeded[0] = new MemoryLimitExceededException(String.valueOf(memory));
+            return;
+        }
+        // 封装单个用例的执行结果
+        ExecuteMessage executeMessage = new ExecuteMessage();
+        executeMessage.setExitValue(exitValue);
+        String message = FileUtil.readString(new File(caseDir, caseName + ".out"), StandardCharsets.UTF_8);
+        executeMessage.setMessage(StrUtil.removeSuffix(message, "\n"));// 去掉最后的\n符
+        if (exitValue != 0 && StrUtil.isBlank(errorMessage)) {
+            // 程序被信号终止时没有错误输出
+            errorMessage = "程序异常退出，退出码：" + exitValue;
+        }
+        executeMessage.setErrorMessage(errorMessage);
+        executeMessage.setTime(time);
+        executeMessage.setMemory(memory);
+        executeMessageList.add(executeMessage);
+        listener.onCaseFinished(Integer.parseInt(caseName) - 1, executeMessage);
+        if (exitValue != 0) {
+            // 通知后面的分片不再执行
+            firstFailure.mark(Integer.parseInt(caseName) - 1);
+        }
+    }
 
-        // 执行完所有输入用例后关闭容器
-        dockerClient.stopContainerCmd(containerId).exec();
+    /**
+     * 错误输出是否为分配内存失败（C++ 的 std::bad_alloc、Python 的 MemoryError、Go 以及 Rust 的分配失败）
+     */
+    private static boolean isAllocationFailure(String errorMessage) {
+        return StrUtil.containsAny(errorMessage, "std::bad_alloc", "MemoryError", "runtime: out of memory", "memory allocation of");
+    }
 
-        // 关闭dockerClient
+    /**
+     * 把输入用例分片到多个容器并行执行，结果按输入顺序合并
+     * 只有第一个容器会等待获取，其余容器只借用当前空闲的，空闲容器不足时减少分片数；
+     * 每个容器同一时间只执行一个用例，因此每个用例的计时互不影响
+     *
+     * @param inputList 输入用例
+     * @param shardTask 分片执行任务
+     * @return {@link List<ExecuteMessage>}
+     */
+    private List<ExecuteMessage> runInShards(List<String> inputList, ShardTask shardTask) throws InterruptedException {
+        // 1.从容器池租借容器（容器保持运行，无需启动）
+        List<ContainerLease> leases = new ArrayList<>();
+        leases.add(containerPool.acquire());
+        int maxShards = Math.min(parallelism, (inputList.size() + minCasesPerShard - 1) / minCasesPerShard);
+        while (leases.size() < maxShards) {
+            ContainerLease lease;
+            try {
+                lease = containerPool.tryAcquire();
+            } catch (Exception e) {
+                // 启动空闲容器失败，使用已借到的容器执行
+                lease = null;
+            }
+            if (lease == null) {
+                break;
+            }
+            leases.add(lease);
+        }
+        FirstFailure firstFailure = new FirstFailure();
+        int shardCount = leases.size();
+        if (shardCount == 1) {
+            try {
+                return shardTask.runAndRelease(leases.get(0), 0, inputList.size(), firstFailure);
+            } catch (RuntimeException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        log.info("输入用例数:{} 分片数:{}", inputList.size(), shardCount);
+
+        // 2.划分分片 [bounds[i], bounds[i + 1])，余数分给前面的分片
+        int[] bounds = new int[shardCount + 1];
+        for (int i = 0; i < shardCount; i++) {
+            bounds[i + 1] = bounds[i] + inputList.size() / shardCount + (i < inputList.size() % shardCount ? 1 : 0);
+        }
+
+        // 3.第一个分片在当前线程执行，其余分片交给用例线程池
+        List<Future<List<ExecuteMessage>>> futures = new ArrayList<>();
+        for (int i = 1; i < shardCount; i++) {
+            ContainerLease lease = leases.get(i);
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            futures.add(caseThreadPoolExecutor.submit(() -> shardTask.runAndRelease(lease, from, to, firstFailure)));
+        }
+        List<List<ExecuteMessage>> results = new ArrayList<>();
+        Throwable[] errors = new Throwable[shardCount];
         try {
-            dockerClient.close();
-        } catch (IOException e) {
-            log.info("dockerClient关闭失败");
+            results.add(shardTask.runAndRelease(leases.get(0), bounds[0], bounds[1], firstFailure));
+        } catch (Exception e) {
+            results.add(null);
+            errors[0] = e;
+        }
+        // 等待所有分片结束（分片结束后才能清理用户代码目录）
+        for (int i = 1; i < shardCount; i++) {
+            try {
+                results.add(futures.get(i - 1).get());
+            } catch (ExecutionException e) {
+                results.add(null);
+                errors[i] = e.getCause();
+            }
         }
 
-        // 返回
+        // 4.按输入顺序合并结果，遇到第一个失败或者没有执行完的分片结束
+        List<ExecuteMessage> executeMessageList = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            if (errors[i] != null) {
+                if (errors[i] instanceof RuntimeException) {
+                    throw (RuntimeException) errors[i];
+                }
+                if (errors[i] instanceof InterruptedException) {
+                    throw (InterruptedException) errors[i];
+                }
+                throw new RuntimeException(errors[i]);
+            }
+            List<ExecuteMessage> shardResult = results.get(i);
+            executeMessageList.addAll(shardResult);
+            boolean truncated = shardResult.size() < bounds[i + 1] - bounds[i];
+            if (truncated || StrUtil.isNotBlank(shardResult.get(shardResult.size() - 1).getErrorMessage())) {
+                break;
+            }
+        }
         return executeMessageList;
     }
 
+    /**
+     * 分片执行任务
+     */
+    @FunctionalInterface
+    private interface ShardTask {
+        /**
+         * 在租借的容器中执行 [from, to) 范围内的输入用例（不归还容器）
+         */
+        List<ExecuteMessage> run(ContainerLease lease, int from, int to, FirstFailure firstFailure) throws Exception;
+
+        /**
+         * 执行分片，失败时通知后面的分片停止；容器只在这里归还（容器保持运行，供下一次提交使用）
+         */
+        default List<ExecuteMessage> runAndRelease(ContainerLease lease, int from, int to, FirstFailure firstFailure) throws Exception {
+            try {
+                return run(lease, from, to, firstFailure);
+            } catch (Exception e) {
+                firstFailure.mark(from);
+                throw e;
+            } finally {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * 各分片共享的第一个失败用例
+     * 只有下标更大的用例不再执行：前面的分片仍要执行完，才能按输入顺序找到第一个失败的用例；
+     * 执行中的用例（或者整个分片）登记后，前面的用例失败时立即中止
+     */
+    static class FirstFailure {
+        // 第一个失败用例的下标，没有失败时为 Integer.MAX_VALUE
+        private final AtomicInteger index = new AtomicInteger(Integer.MAX_VALUE);
+
+        // 执行中的用例：起始下标 -> 中止回调
+        private final List<Map.Entry<Integer, Closeable>> running = new CopyOnWriteArrayList<>();
+
+        /**
+         * 记录失败的用例，中止之后正在执行的用例
+         */
+        void mark(int caseIndex) {
+            index.accumulateAndGet(caseIndex, Math::min);
+            for (Map.Entry<Integer, Closeable> entry : running) {
+                if (skips(entry.getKey())) {
+                    IoUtil.close(entry.getValue());
+                }
+            }
+        }
+
+        /**
+         * 取消全部用例
+         */
+        void cancelAll() {
+            mark(-1);
+        }
+
+        /**
+         * 下标为 caseIndex 的用例是否不再需要执行
+         */
+        boolean skips(int caseIndex) {
+            return index.get() < caseIndex;
+        }
+
+        /**
+         * 登记从 caseIndex 开始执行的用例，登记时已经不需要执行的立即中止
+         */
+        void register(int caseIndex, Closeable callback) {
+            running.add(new AbstractMap.SimpleImmutableEntry<>(caseIndex, callback));
+            if (skips(caseIndex)) {
+                IoUtil.close(callback);
+            }
+        }
+
+        void unregister(Closeable callback) {
+            running.removeIf(entry -> entry.getValue() == callback);
+        }
+    }
+
     /**
      * 4. 获取输出结果
      *
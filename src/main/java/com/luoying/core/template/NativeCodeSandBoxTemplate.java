@@ -5,11 +5,18 @@ import cn.hutool.core.util.StrUtil;
 import cn.hutool.dfa.FoundWord;
 import cn.hutool.dfa.WordTree;
 import com.luoying.core.CodeSandBox;
+import com.luoying.core.cache.CompileCache;
+import com.luoying.core.nativ.RlimitLauncher;
+import com.luoying.exception.OutputLimitExceededException;
 import com.luoying.model.*;
 import com.luoying.model.enums.JudgeInfoMessagenum;
 import com.luoying.utils.ProcessUtil;
+import com.luoying.utils.ProcessWatchdog;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.Resource;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -34,7 +41,11 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
     String codeFileName;
 
     // 超时时间 ms
-    private static final long TIMEOUT = 5000L;
+    protected static final long TIMEOUT = 5000L;
+
+    // 最大输出 K（标准输出、错误输出分别计算）
+    @Value("${sandbox.output.limit:65536}")
+    protected long outputOut;
 
     // 字典树
     private static final WordTree WORD_TREE;
@@ -44,6 +55,14 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
         WORD_TREE.addWords("Files", "exec");
     }
 
+    // 编译缓存
+    @Resource
+    private CompileCache compileCache;
+
+    // 内核资源限制
+    @Resource
+    private RlimitLauncher rlimitLauncher;
+
     protected NativeCodeSandBoxTemplate(String topDirPath, String secDirPath, String codeFileName) {
         this.topDirPath = topDirPath;
         this.secDirPath = secDirPath;
@@ -60,6 +79,32 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
      */
     protected abstract CodeSandBoxCmd getCmd(String userCodeParentPath, String userCodePath);
 
+    /**
+     * 根据请求构造编译以及运行的cmd（子类可以覆盖，例如按运行配置选择参数）
+     *
+     * @param userCodeParentPath 用户代码父目录的绝对路径
+     * @param userCodePath       用户代码文件的绝对路径
+     * @param executeCodeRequest 执行代码请求
+     * @return {@link CodeSandBoxCmd}
+     */
+    protected CodeSandBoxCmd getCmd(String userCodeParentPath, String userCodePath, ExecuteCodeRequest executeCodeRequest) {
+        return getCmd(userCodeParentPath, userCodePath);
+    }
+
+    /**
+     * 运行时是否限制地址空间（子类可以覆盖，例如 JVM 使用 -Xmx 限制堆内存）
+     */
+    protected boolean limitAddressSpace() {
+        return true;
+    }
+
+    /**
+     * 编译命令之外影响编译产物的选项（计入编译缓存键），不通过编译命令编译的子类需要覆盖
+     */
+    protected String compileOptions() {
+        return "";
+    }
+
     /**
      * 执行代码
      *
@@ -94,20 +139,37 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
             String userCodeParentPath = userCodeFile.getParentFile().getAbsolutePath();
 
             // 获取编译命令和执行命令
-            CodeSandBoxCmd sandBoxCmd = getCmd(userCodeParentPath, userCodePath);
+            CodeSandBoxCmd sandBoxCmd = getCmd(userCodeParentPath, userCodePath, executeCodeRequest);
             String compileCmd = sandBoxCmd.getCompileCmd();
-            String runCmd = sandBoxCmd.getRunCmd();
 
-            // 2. 编译代码
-            ExecuteMessage compileCodeFileExecuteMessage = compileCode(compileCmd);
-            if (compileCodeFileExecuteMessage.getExitValue() != 0) {
-                log.info("编译信息：{}", compileCodeFileExecuteMessage);
-                return getCompileCodeErrorResponse(compileCodeFileExecuteMessage);
+            // 相同的代码编译过，直接使用缓存的编译产物
+            String compileCacheKey = compileCache.key(ClassUtils.getUserClass(this).getSimpleName(), compileCmd, compileOptions(), userCodeFile.getParentFile(), code);
+            if (compileCache.restore(compileCacheKey, userCodeFile.getParentFile())) {
+                log.info("命中编译缓存 key={}", compileCacheKey);
+            } else {
+                // 2. 编译代码
+                ExecuteMessage compileCodeFileExecuteMessage = compileCode(compileCmd, userCodeFile, code);
+                if (compileCodeFileExecuteMessage.getExitValue() != 0) {
+                    log.info("编译信息：{}", compileCodeFileExecuteMessage);
+                    return getCompileCodeErrorResponse(compileCodeFileExecuteMessage);
+                }
+                compileCache.store(compileCacheKey, userCodeFile.getParentFile(), codeFileName);
             }
 
             // 3. 执行代码，得到输出结果
-            List<ExecuteMessage> executeMessageList = runCode(inputList, runCmd);
+            List<ExecuteMessage> executeMessageList;
+            try {
+                executeMessageList = runCode(inputList, sandBoxCmd, userCodeFile.getParentFile());
+            } catch (OutputLimitExceededException e) {
+                return getOutputExceededErrorResponse();
+            }
             for (ExecuteMessage executeMessage : executeMessageList) {
+                if (JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue().equals(executeMessage.getErrorMessage())) {
+                    return getTimeExceededErrorResponse(executeMessage.getTime());
+                }
+                if (JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED.getValue().equals(executeMessage.getErrorMessage())) {
+                    return getMemoryExceededErrorResponse(executeMessage.getMemory());
+                }
                 if (executeMessage.getExitValue() != 0) {
                     return getRunCodeErrorResponse(executeMessage);
                 }
@@ -146,10 +208,14 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
      */
     private ExecuteCodeResponse getCompileCodeErrorResponse(ExecuteMessage executeMessage) {
         int index = executeMessage.getErrorMessage().indexOf(codeFileName, 0);
-        String userCodeParentPath = executeMessage.getErrorMessage().substring(0, index);
-        log.info(userCodeParentPath);
-        // 去除错误信息中的系统路径
-        String errormessage = executeMessage.getErrorMessage().replace(userCodeParentPath, "");
+        String errormessage = executeMessage.getErrorMessage();
+        // 没有源文件的诊断信息（例如不支持的 --release）不包含路径
+        if (index > 0) {
+            String userCodeParentPath = executeMessage.getErrorMessage().substring(0, index);
+            log.info(userCodeParentPath);
+            // 去除错误信息中的系统路径
+            errormessage = executeMessage.getErrorMessage().replace(userCodeParentPath, "");
+        }
         QuestionSubmitJudgeInfo judgeInfo = new QuestionSubmitJudgeInfo();
         judgeInfo.setMessage(errormessage);
         judgeInfo.setTime(-1L);
@@ -161,6 +227,51 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
                 .judgeInfo(judgeInfo).build();
     }
 
+    /**
+     * 获取执行代码响应（输出超出上限）
+     */
+    private ExecuteCodeResponse getOutputExceededErrorResponse() {
+        QuestionSubmitJudgeInfo judgeInfo = new QuestionSubmitJudgeInfo();
+        judgeInfo.setMessage(JudgeInfoMessagenum.OUTPUT_LIMIT_EXCEEDED.getValue());
+        judgeInfo.setTime(-1L);
+        judgeInfo.setMemory(-1L);
+        return ExecuteCodeResponse.builder()
+                .outputList(null)
+                .message(JudgeInfoMessagenum.OUTPUT_LIMIT_EXCEEDED.getValue())
+                .status(3)
+                .judgeInfo(judgeInfo).build();
+    }
+
+    /**
+     * 获取执行代码响应（时间超限）
+     */
+    private ExecuteCodeResponse getTimeExceededErrorResponse(Long time) {
+        QuestionSubmitJudgeInfo judgeInfo = new QuestionSubmitJudgeInfo();
+        judgeInfo.setMessage(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue());
+        judgeInfo.setTime(time == null ? -1L : time);
+        judgeInfo.setMemory(-1L);
+        return ExecuteCodeResponse.builder()
+                .outputList(null)
+                .message(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue())
+                .status(3)
+                .judgeInfo(judgeInfo).build();
+    }
+
+    /**
+     * 获取执行代码响应（内存超限）
+     */
+    private ExecuteCodeResponse getMemoryExceededErrorResponse(Long memory) {
+        QuestionSubmitJudgeInfo judgeInfo = new QuestionSubmitJudgeInfo();
+        judgeInfo.setMessage(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED.getValue());
+        judgeInfo.setTime(-1L);
+        judgeInfo.setMemory(memory == null ? -1L : memory);
+        return ExecuteCodeResponse.builder()
+                .outputList(null)
+                .message(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED.getValue())
+                .status(3)
+                .judgeInfo(judgeInfo).build();
+    }
+
     /**
      * 获取执行代码响应（运行代码失败）
      */
@@ -210,6 +321,18 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
     }
 
 
+    /**
+     * 2. 编译代码（子类可以覆盖，例如使用进程内的编译器）
+     *
+     * @param compileCmd   编译命令
+     * @param userCodeFile 用户代码文件
+     * @param code         代码
+     * @return {@link ExecuteMessage}
+     */
+    protected ExecuteMessage compileCode(String compileCmd, File userCodeFile, String code) {
+        return compileCode(compileCmd);
+    }
+
     /**
      * 2. 编译代码
      *
@@ -218,10 +341,8 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
      */
     private ExecuteMessage compileCode(String compileCmd) {
         try {
-            // 获取编译的Process
-            Process compileProcess = Runtime.getRuntime().exec(compileCmd);
-            // 返回编译结果
-            return ProcessUtil.runProcessAndGetMessage(compileProcess, "编译");
+            // 编译器的错误输出合并到标准输出，返回编译结果
+            return ProcessUtil.runCmdAndGetMessage(compileCmd, null, "编译");
         } catch (IOException e) {
             log.error("CompileCode Exception:{}", e);
             throw new RuntimeException(e);
@@ -232,45 +353,71 @@ public abstract class NativeCodeSandBoxTemplate implements CodeSandBox {
     /**
      * 3. 执行代码，获得执行结果列表
      *
-     * @param inputList 输入用例
-     * @param runCmd    运行的cmd
+     * @param inputList         输入用例
+     * @param sandBoxCmd        编译以及运行的cmd
+     * @param userCodeParentDir 用户代码父目录
      * @return {@link List<ExecuteMessage>}
      */
-    private List<ExecuteMessage> runCode(List<String> inputList, String runCmd) {
+    private List<ExecuteMessage> runCode(List<String> inputList, CodeSandBoxCmd sandBoxCmd, File userCodeParentDir) {
         // 用于保存每个输入用例的执行信息
         List<ExecuteMessage> executeMessageList = new LinkedList<>();
         // 遍历inputList，执行每个输入用例
         for (String input : inputList) {
-            try {
-                // 获取运行的Process
-                Process runProcess = Runtime.getRuntime().exec(runCmd);
-                // 另起一个线程
-                new Thread(() -> {
-                    try {
-                        // 如果执行单个用例超时了，就销毁运行的Process
-                        Thread.sleep(TIMEOUT);
-                        if (runProcess.isAlive()) {
-                            log.info("超时了，中断");
-                            runProcess.destroy();
-                        }
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).start();
-                // 获取运行结果
-                ExecuteMessage executeMessage = ProcessUtil.handleProcessInteraction(runProcess, input, "运行");
-                log.info("{}", executeMessage);
-                // 保存该输入用例的运行结果
-                executeMessageList.add(executeMessage);
-            } catch (IOException e) {
-                log.error("RunCode Exception:{}", e);
-                throw new RuntimeException("程序执行异常，" + e);
-            }
+            executeMessageList.add(runCode(sandBoxCmd, userCodeParentDir, input));
         }
         // 返回
         return executeMessageList;
     }
 
+    /**
+     * 3. 执行一个输入用例（子类可以覆盖，例如交给常驻的执行进程）
+     *
+     * @param sandBoxCmd        编译以及运行的cmd
+     * @param userCodeParentDir 用户代码父目录
+     * @param input             输入用例
+     * @return {@link ExecuteMessage}
+     */
+    protected ExecuteMessage runCode(CodeSandBoxCmd sandBoxCmd, File userCodeParentDir, String input) {
+        try {
+            // 获取运行的Process（由内核限制地址空间、CPU 时间、写入文件大小以及进程数）
+            Process runProcess = Runtime.getRuntime().exec(rlimitLauncher.wrap(sandBoxCmd.getRunCmd(), limitAddressSpace()));
+            // 登记截止时间，超时后销毁进程树（启用 CPU 时间限制时晚于硬限制，只作为兜底）
+            ProcessWatchdog watchdog = ProcessWatchdog.watch(runProcess, rlimitLauncher.watchdogTimeout(TIMEOUT));
+            // 获取运行结果
+            ExecuteMessage executeMessage;
+            try {
+                executeMessage = ProcessUtil.handleProcessInteraction(runProcess, input, "运行", outputOut * 1024);
+            } finally {
+                watchdog.cancel();
+            }
+            if (watchdog.isTimedOut()) {
+                executeMessage.setExitValue(-1);
+                executeMessage.setErrorMessage(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue());
+                executeMessage.setTime(watchdog.getElapsed());
+            } else if (executeMessage.getTime() != null && executeMessage.getTime() >= TIMEOUT) {
+                // 在看门狗的截止时间之前结束，但墙上时间已经超限
+                executeMessage.setExitValue(-1);
+                executeMessage.setErrorMessage(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue());
+            } else {
+                // 根据进程收到的信号判定超限类型
+                JudgeInfoMessagenum verdict = rlimitLauncher.verdict(executeMessage, limitAddressSpace());
+                if (verdict == JudgeInfoMessagenum.OUTPUT_LIMIT_EXCEEDED) {
+                    throw new OutputLimitExceededException(String.valueOf(executeMessage.getExitValue()));
+                }
+                if (verdict != null) {
+                    executeMessage.setExitValue(-1);
+                    executeMessage.setErrorMessage(verdict.getValue());
+                }
+            }
+            log.info("{}", executeMessage);
+            // 返回该输入用例的运行结果
+            return executeMessage;
+        } catch (IOException e) {
+            log.error("RunCode Exception:{}", e);
+            throw new RuntimeException("程序执行异常，" + e);
+        }
+    }
+
 
     /**
      * 4. 获取输出结果
@@ -0,0 +1,11 @@
+package com.luoying.exception;
+
+/**
+ * @Author 落樱的悔恨
+ * 在等待时间内没有获取到空闲容器（容器都在使用中），接口返回 503 并带上 Retry-After
+ */
+public class ContainerAcquireTimeoutException extends RuntimeException {
+    public ContainerAcquireTimeoutException(String message) {
+        super(message);
+    }
+}
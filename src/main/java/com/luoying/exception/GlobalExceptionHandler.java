@@ -0,0 +1,46 @@
+package com.luoying.exception;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * @Author 落樱的悔恨
+ * 全局异常处理
+ */
+@RestControllerAdvice
+@Slf4j
+public class GlobalExceptionHandler {
+    // 建议的重试间隔 s
+    @Value("${sandbox.executor.retry-after:1}")
+    private long retryAfter;
+
+    /**
+     * 沙箱繁忙：返回 429/503，并通过 Retry-After 告知调用方稍后重试
+     */
+    @ExceptionHandler(SandboxBusyException.class)
+    public ResponseEntity<Map<String, String>> sandboxBusyExceptionHandler(SandboxBusyException e) {
+        log.warn("拒绝提交：{}", e.getMessage());
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter()))
+                .body(Collections.singletonMap("message", e.getMessage()));
+    }
+
+    /**
+     * 获取容器超时：容器都在使用中，返回 503，并通过 Retry-After 告知调用方稍后重试
+     */
+    @ExceptionHandler(ContainerAcquireTimeoutException.class)
+    public ResponseEntity<Map<String, String>> containerAcquireTimeoutExceptionHandler(ContainerAcquireTimeoutException e) {
+        log.warn("执行失败：{}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(Collections.singletonMap("message", e.getMessage()));
+    }
+}
@@ -0,0 +1,11 @@
+package com.luoying.exception;
+
+/**
+ * @Author 落樱的悔恨
+ * @Date 2026/10/18 14:05
+ */
+public class OutputLimitExceededException extends RuntimeException{
+    public OutputLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+package com.luoying.exception;
+
+/**
+ * @Author 落樱的悔恨
+ * 沙箱繁忙（提交队列已满或者正在关闭），接口返回 429/503 并带上 Retry-After
+ */
+public class SandboxBusyException extends RuntimeException {
+    // HTTP 状态码
+    private final int status;
+
+    // 建议的重试间隔 s
+    private final long retryAfter;
+
+    public SandboxBusyException(String message, int status, long retryAfter) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
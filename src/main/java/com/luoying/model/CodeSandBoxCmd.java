@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * @author 落樱的悔恨
  * 代码沙箱命令
@@ -23,4 +25,14 @@ public class CodeSandBoxCmd {
      * 运行命令
      */
     private String runCmd;
+
+    /**
+     * 运行命令的参数列表（Docker 沙箱直接作为 exec 的参数，不经过空格拆分）
+     */
+    private List<String> runArgs;
+
+    /**
+     * 运行配置（为空时使用默认配置）
+     */
+    private String runProfile;
 }
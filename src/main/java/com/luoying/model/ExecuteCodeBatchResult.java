@@ -0,0 +1,31 @@
+package com.luoying.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author 落樱的悔恨
+ * 批量执行代码的单个结果（按完成顺序返回，通过下标对应请求）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExecuteCodeBatchResult {
+    /**
+     * 请求在批量请求中的下标
+     */
+    private Integer index;
+
+    /**
+     * 执行代码响应，执行失败时为空
+     */
+    private ExecuteCodeResponse response;
+
+    /**
+     * 执行失败（例如被拒绝、不支持的编程语言）的原因
+     */
+    private String error;
+}
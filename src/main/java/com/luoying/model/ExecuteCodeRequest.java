@@ -30,4 +30,24 @@ public class ExecuteCodeRequest {
      * 编程语言
      */
     private String language;
+
+    /**
+     * 运行配置（例如 Java 的 default、short），为空时使用默认配置
+     */
+    private String runProfile;
+
+    /**
+     * 优先级（contest、practice、rejudge），为空时使用默认优先级
+     */
+    private String priority;
+
+    /**
+     * 租户（同一优先级内按租户公平排队），为空时为 default
+     */
+    private String tenant;
+
+    /**
+     * 题目 id（按题目估计提交的耗时），可以为空
+     */
+    private Long questionId;
 }
@@ -24,10 +24,15 @@ public class ExecuteMessage {
     private String errorMessage;
 
     /**
-     * 消耗时间 ms
+     * 消耗时间 ms（墙上时间）
      */
     private Long time;
 
+    /**
+     * CPU 时间 ms（用户态+内核态，定时采样得到，可能略小于实际值；无法统计时为空）
+     */
+    private Long cpuTime;
+
     /**
      * 消耗内存 KB
      */
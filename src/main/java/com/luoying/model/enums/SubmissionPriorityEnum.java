@@ -0,0 +1,54 @@
+package com.luoying.model.enums;
+
+import lombok.Getter;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author 落樱的悔恨
+ * 提交优先级枚举（按声明顺序从高到低）
+ */
+@Getter
+public enum SubmissionPriorityEnum {
+
+    CONTEST("比赛", "contest"),
+    PRACTICE("练习", "practice"),
+    REJUDGE("重判", "rejudge");
+
+    private final String text;
+
+    private final String value;
+
+    SubmissionPriorityEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 获取值列表
+     *
+     */
+    public static List<String> getValues() {
+        return Arrays.stream(values()).map(item -> item.value).collect(Collectors.toList());
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value
+     */
+    public static SubmissionPriorityEnum getEnumByValue(String value) {
+        if (ObjectUtils.isEmpty(value)) {
+            return null;
+        }
+        for (SubmissionPriorityEnum anEnum : SubmissionPriorityEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
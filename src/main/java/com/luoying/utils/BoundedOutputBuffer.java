@@ -0,0 +1,152 @@
+package com.luoying.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 落樱的悔恨
+ * 有上限的输出缓冲区
+ * 按原始字节累积 exec 的输出帧（或进程的输出流），结束时只解码一次；超过上限后不再写入。
+ * 缓冲区通过 {@link #obtain(long)} 获取、{@link #recycle()} 归还，避免每次执行都重新分配
+ */
+public class BoundedOutputBuffer {
+    // 初始容量
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+
+    // 归还时保留的最大容量，超出的大缓冲区直接丢弃，避免长期占用内存
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    // 池中最多保留的缓冲区数量
+    private static final int MAX_POOLED = 64;
+
+    private static final ConcurrentLinkedQueue<BoundedOutputBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED_COUNT = new AtomicInteger();
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+
+    private int count;
+
+    // 上限 字节
+    private long limit;
+
+    // 是否超出上限
+    private boolean overflow;
+
+    private BoundedOutputBuffer() {
+    }
+
+    /**
+     * 获取缓冲区
+     *
+     * @param limit 上限 字节
+     * @return {@link BoundedOutputBuffer}
+     */
+    public static BoundedOutputBuffer obtain(long limit) {
+        BoundedOutputBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = new BoundedOutputBuffer();
+        } else {
+            POOLED_COUNT.decrementAndGet();
+        }
+        buffer.limit = limit;
+        return buffer;
+    }
+
+    /**
+     * 写入一帧输出
+     *
+     * @param bytes 输出
+     * @return 是否仍在上限之内
+     */
+    public boolean write(byte[] bytes) {
+        return write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 写入一段输出
+     *
+     * @param bytes  输出
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 是否仍在上限之内
+     */
+    public synchronized boolean write(byte[] bytes, int offset, int length) {
+        if (overflow) {
+            return false;
+        }
+        if (count + (long) length > limit) {
+            // 写满上限后标记溢出
+            int remaining = (int) (limit - count);
+            ensureCapacity(count + remaining);
+            System.arraycopy(bytes, offset, buf, count, remaining);
+            count += remaining;
+            overflow = true;
+            return false;
+        }
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+        return true;
+    }
+
+    /**
+     * 是否超出上限
+     */
+    public synchronized boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * 已写入的字节数
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 解码为字符串
+     *
+     * @param removeTrailingNewLine 是否去掉最后的\n符
+     * @return 输出
+     */
+    public synchronized String toString(boolean removeTrailingNewLine) {
+        int length = count;
+        if (removeTrailingNewLine && length > 0 && buf[length - 1] == '\n') {
+            length--;
+        }
+        return new String(buf, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return toString(false);
+    }
+
+    /**
+     * 归还缓冲区，归还后不能再使用
+     */
+    public void recycle() {
+        synchronized (this) {
+            count = 0;
+            overflow = false;
+            if (buf.length > MAX_RETAINED_CAPACITY) {
+                buf = new byte[INITIAL_CAPACITY];
+            }
+        }
+        if (POOLED_COUNT.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(this);
+        } else {
+            POOLED_COUNT.decrementAndGet();
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            int newCapacity = Math.max(buf.length << 1, minCapacity);
+            buf = Arrays.copyOf(buf, newCapacity);
+        }
+    }
+}
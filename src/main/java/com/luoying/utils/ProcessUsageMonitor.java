@@ -0,0 +1,174 @@
+package com.luoying.utils;
+
+import cn.hutool.core.io.IoUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author 落樱的悔恨
+ * 子进程资源统计（Linux）
+ * 进程运行期间定时读取 /proc/<pid>/stat 的 CPU 时间（用户态+内核态）和 /proc/<pid>/status 的峰值常驻内存（VmHWM）；
+ * 两者都是累计值，只需保留进程退出前最后一次读到的值（最后一个采样间隔内的增量会丢失，很短的程序 CPU 时间可能为 0，
+ * 因此只作为参考，耗时仍以墙上时间为准）；
+ * 进程号在 exec 前属于启动辅助进程（jspawnhelper、prlimit），exec 后峰值常驻内存重新统计，进程名变化时丢弃之前的峰值；
+ * 进程被回收后进程号可能被复用，所以只在进程存活时读取；没有 /proc 的系统上不可用
+ */
+@Slf4j
+public class ProcessUsageMonitor {
+    // 采样间隔 ms
+    private static final long SAMPLE_INTERVAL = 10L;
+
+    // 是否支持（存在 /proc）
+    private static final boolean SUPPORTED = new File("/proc/self/stat").exists();
+
+    // 每秒的时钟滴答数（/proc/<pid>/stat 中 CPU 时间的单位）
+    private static final long CLOCK_TICKS = clockTicks();
+
+    // 正在统计的进程
+    private static final Map<Long, ProcessUsageMonitor> MONITORS = new ConcurrentHashMap<>();
+
+    // 所有进程共用一个采样线程
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "process-usage-sampler-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        if (SUPPORTED) {
+            SAMPLER.scheduleWithFixedDelay(() -> MONITORS.values().forEach(ProcessUsageMonitor::sample), SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final Process process;
+
+    private final long pid;
+
+    // CPU 时间 ms
+    private volatile long cpuTime = -1;
+
+    // 峰值常驻内存 KB
+    private volatile long peakMemory = -1;
+
+    // 最近一次采样时的进程名（exec 后变化）
+    private String command;
+
+    private ProcessUsageMonitor(Process process, long pid) {
+        this.process = process;
+        this.pid = pid;
+    }
+
+    /**
+     * 开始统计进程的资源使用
+     *
+     * @param process 进程
+     * @return {@link ProcessUsageMonitor}，不支持时返回 null
+     */
+    public static ProcessUsageMonitor start(Process process) {
+        long pid = pid(process);
+        if (!SUPPORTED || pid <= 0) {
+            return null;
+        }
+        ProcessUsageMonitor monitor = new ProcessUsageMonitor(process, pid);
+        monitor.sample();
+        MONITORS.put(pid, monitor);
+        return monitor;
+    }
+
+    /**
+     * 停止统计（进程结束后调用）
+     */
+    public void stop() {
+        MONITORS.remove(pid, this);
+    }
+
+    /**
+     * CPU 时间（用户态+内核态）ms，没有读到时返回 -1
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * 峰值常驻内存 KB，没有读到时返回 -1
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+
+    private synchronized void sample() {
+        if (!process.isAlive()) {
+            return;
+        }
+        try {
+            // 进程名可能包含空格和括号，从最后一个右括号之后开始解析：状态 为第 3 项，utime、stime 为第 14、15 项
+            String stat = new String(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "stat")), StandardCharsets.UTF_8);
+            String comm = stat.substring(stat.indexOf('(') + 1, stat.lastIndexOf(')'));
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            cpuTime = Math.max(cpuTime, ticks * 1000 / CLOCK_TICKS);
+            List<String> status = Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "status"), StandardCharsets.UTF_8);
+            for (String line : status) {
+                if (line.startsWith("VmHWM:")) {
+                    long hwm = Long.parseLong(line.substring("VmHWM:".length()).trim().split("\\s+")[0]);
+                    // exec 后是新的地址空间，之前的峰值属于启动辅助进程
+                    peakMemory = comm.equals(command) ? Math.max(peakMemory, hwm) : hwm;
+                    command = comm;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            // 进程已退出
+        }
+    }
+
+    /**
+     * 获取进程号（Process.pid() 从 JDK 9 开始提供，JDK 8 读取 UNIXProcess 的 pid 字段）
+     */
+    private static long pid(Process process) {
+        try {
+            Method method = Process.class.getMethod("pid");
+            return (Long) method.invoke(process);
+        } catch (NoSuchMethodException e) {
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getInt(process);
+            } catch (Exception ex) {
+                return -1;
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long clockTicks() {
+        if (!SUPPORTED) {
+            return 100;
+        }
+        try {
+            Process process = new ProcessBuilder("getconf", "CLK_TCK").start();
+            String ticks = IoUtil.read(process.getInputStream(), StandardCharsets.UTF_8).trim();
+            process.waitFor();
+            return Long.parseLong(ticks);
+        } catch (Exception e) {
+            // Linux 上几乎都是 100
+            return 100;
+        }
+    }
+}
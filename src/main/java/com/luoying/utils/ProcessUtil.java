@@ -1,26 +1,75 @@
 package com.luoying.utils;
 
-import cn.hutool.core.collection.CollectionUtil;
+import com.luoying.exception.OutputLimitExceededException;
 import com.luoying.model.ExecuteMessage;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.StopWatch;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author 落樱的悔恨
  * 进程工具类
+ * 进程运行期间同时读取标准输出和错误输出（写入有上限的缓冲区），避免输出超过管道缓冲区（约 64KB）后进程阻塞
  */
 @Slf4j
 public class ProcessUtil {
+    /**
+     * 默认的输出上限 byte
+     */
+    public static final long DEFAULT_OUTPUT_LIMIT = 64 * 1024 * 1024L;
+
+    // 读取缓冲区大小
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    // 读取进程输出的线程（守护线程，按需创建，空闲 60 秒后回收）
+    private static final ExecutorService IO_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "process-io-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * 执行命令（与 Runtime.exec 一样按空白字符拆分），错误输出合并到标准输出，适用于编译等只关心全部输出的命令
+     *
+     * @param cmd    命令
+     * @param env    附加的环境变量，可以为 null
+     * @param opName 操作名
+     * @return {@link ExecuteMessage}，失败时错误信息为合并后的输出
+     */
+    public static ExecuteMessage runCmdAndGetMessage(String cmd, Map<String, String> env, String opName) throws IOException {
+        StringTokenizer tokenizer = new StringTokenizer(cmd);
+        List<String> command = new ArrayList<>();
+        while (tokenizer.hasMoreTokens()) {
+            command.add(tokenizer.nextToken());
+        }
+        ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+        if (env != null) {
+            processBuilder.environment().putAll(env);
+        }
+        Process process = processBuilder.start();
+        ExecuteMessage executeMessage = execute(process, null, opName, DEFAULT_OUTPUT_LIMIT);
+        if (executeMessage.getExitValue() != 0) {
+            executeMessage.setErrorMessage(executeMessage.getMessage() == null ? "" : executeMessage.getMessage());
+            executeMessage.setMessage(null);
+        }
+        return executeMessage;
+    }
+
     /**
      * 执行进程，并记录信息
      *
@@ -29,98 +78,136 @@ public class ProcessUtil {
      * @return {@link ExecuteMessage}
      */
     public static ExecuteMessage runProcessAndGetMessage(Process process, String opName) {
+        return execute(process, null, opName, DEFAULT_OUTPUT_LIMIT);
+    }
+
+    /**
+     * 执行交互式进程，并记录信息
+     *
+     * @param runProcess 运行命令进程
+     * @param input      输入用例
+     * @param opName     操作名
+     * @return {@link ExecuteMessage}
+     */
+    public static ExecuteMessage handleProcessInteraction(Process runProcess, String input, String opName) {
+        return handleProcessInteraction(runProcess, input, opName, DEFAULT_OUTPUT_LIMIT);
+    }
+
+    /**
+     * 执行交互式进程，并记录信息
+     *
+     * @param runProcess  运行命令进程
+     * @param input       输入用例
+     * @param opName      操作名
+     * @param outputLimit 标准输出、错误输出各自的上限 byte，超出时销毁进程并抛出 {@link OutputLimitExceededException}
+     * @return {@link ExecuteMessage}
+     */
+    public static ExecuteMessage handleProcessInteraction(Process runProcess, String input, String opName, long outputLimit) {
+        return execute(runProcess, input + "\n", opName, outputLimit);
+    }
+
+    private static ExecuteMessage execute(Process process, String input, String opName, long outputLimit) {
         ExecuteMessage executeMessage = new ExecuteMessage();
+        BoundedOutputBuffer output = BoundedOutputBuffer.obtain(outputLimit);
+        BoundedOutputBuffer error = BoundedOutputBuffer.obtain(outputLimit);
+        // 统计子进程的 CPU 时间和峰值内存
+        ProcessUsageMonitor usageMonitor = ProcessUsageMonitor.start(process);
         try {
             // 开始计时
             StopWatch watch = new StopWatch();
             watch.start();
-            // 起始内存
-            MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
-            long start = memoryMXBean.getHeapMemoryUsage().getUsed() + memoryMXBean.getNonHeapMemoryUsage().getUsed();
-            log.info("{}start {}", opName, start / 1024);
+            // 先开始读取输出，再写入输入（程序可能边读边写）
+            Future<?> outputDrain = IO_EXECUTOR.submit(() -> drain(process, process.getInputStream(), output));
+            Future<?> errorDrain = IO_EXECUTOR.submit(() -> drain(process, process.getErrorStream(), error));
+            writeInput(process, input);
             // 执行进程
             int exitValue = process.waitFor();
+            if (usageMonitor != null) {
+                usageMonitor.stop();
+            }
+            outputDrain.get();
+            errorDrain.get();
+            // 结束计时
+            watch.stop();
+            if (output.isOverflow() || error.isOverflow()) {
+                log.error("{}输出超出上限 {}", opName, outputLimit);
+                throw new OutputLimitExceededException(String.valueOf(Math.max(output.size(), error.size())));
+            }
             // 设置退出码
             executeMessage.setExitValue(exitValue);
 
             if (exitValue == 0) {// 0-正常
                 log.info(opName + "成功");
-
             } else {// 其他-异常
-                // 异常退出
                 log.error(opName + "失败，错误码为: {}", exitValue);
-                // 获取错误输入流(Linux)
-                BufferedReader errorBufferedReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                /*// 获取错误输入流(Windows)
-                BufferedReader errorBufferedReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), "GBK"));*/
-                // 读取错误信息
-                String errorOutputLine = "";
-                List<String> errorOutputStrList = new ArrayList<>();
-                while ((errorOutputLine = errorBufferedReader.readLine()) != null) {
-                    errorOutputStrList.add(errorOutputLine);
-                }
-                log.error("错误输出为：{}", errorOutputStrList);
                 // 设置错误信息
-                executeMessage.setErrorMessage(StringUtils.join(errorOutputStrList, "\n"));
-            }
-            // 获取正常输入流
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            // 读取正常信息
-            String outputLine = "";
-            List<String> outputStrList = new ArrayList<>();
-            while ((outputLine = bufferedReader.readLine()) != null) {
-                outputStrList.add(outputLine);
+                String errorMessage = error.toString(true);
+                log.error("错误输出为：{}", errorMessage);
+                executeMessage.setErrorMessage(errorMessage);
             }
-            if (CollectionUtil.isNotEmpty(outputStrList)) { // 设置正常信息
-                log.info("正常输出：{}", outputStrList);
-                executeMessage.setMessage(StringUtils.join(outputStrList, "\n"));
+            if (output.size() > 0) { // 设置正常信息
+                executeMessage.setMessage(output.toString(true));
             }
-            // 结束计时
-            watch.stop();
-            // 结束内存
-            long end = memoryMXBean.getHeapMemoryUsage().getUsed() + memoryMXBean.getNonHeapMemoryUsage().getUsed();
-            log.info("{}end {}", opName, end / 1024);
-            // 设置时间
+            // 设置时间（墙上时间），另外记录 CPU 时间
             executeMessage.setTime(watch.getLastTaskTimeMillis());
-            // 设置内存
-            executeMessage.setMemory( (end - start) / 1024);
+            long cpuTime = usageMonitor == null ? -1 : usageMonitor.getCpuTime();
+            if (cpuTime >= 0) {
+                executeMessage.setCpuTime(cpuTime);
+            }
+            // 设置内存（峰值常驻内存 KB）
+            long peakMemory = usageMonitor == null ? -1 : usageMonitor.getPeakMemory();
+            if (peakMemory >= 0) {
+                executeMessage.setMemory(peakMemory);
+            }
+            log.info("{} CPU时间:{}ms 墙上时间:{}ms 峰值内存:{}KB", opName, cpuTime, watch.getLastTaskTimeMillis(), peakMemory);
+        } catch (OutputLimitExceededException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(opName + "错误：" + e);
         } catch (Exception e) {
+            process.destroyForcibly();
             throw new RuntimeException(opName + "错误：" + e);
+        } finally {
+            if (usageMonitor != null) {
+                usageMonitor.stop();
+            }
+            output.recycle();
+            error.recycle();
         }
-
         return executeMessage;
     }
 
     /**
-     * 执行交互式进程，并记录信息
-     *
-     * @param runProcess 运行命令进程
-     * @param input      输入用例
-     * @param opName     操作名
-     * @return {@link ExecuteMessage}
+     * 写入输入并关闭标准输入（进程提前退出时忽略写入失败）
      */
-    public static ExecuteMessage handleProcessInteraction(Process runProcess, String input, String opName) {
-        // 获取运行命令进程的输出流
-        OutputStream outputStream = runProcess.getOutputStream();
-        try {
-            // 模拟控制台输入数据
-            outputStream.write((input + "\n").getBytes());
-            // 清空缓冲区
-            outputStream.flush();
-            // 关闭输出流
-            outputStream.close();
-            // 调用runProcessAndGetMessagez执行进程
-            return runProcessAndGetMessage(runProcess, opName);
+    private static void writeInput(Process process, String input) {
+        try (OutputStream outputStream = process.getOutputStream()) {
+            if (input != null) {
+                outputStream.write(input.getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+            }
         } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            try {
-                if (outputStream != null) {
-                    outputStream.close();
+            log.info("写入输入失败（进程可能已退出）：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 读取进程的输出直到结束，超出上限时销毁进程
+     */
+    private static void drain(Process process, InputStream inputStream, BoundedOutputBuffer buffer) {
+        byte[] bytes = new byte[READ_BUFFER_SIZE];
+        try (InputStream in = inputStream) {
+            int length;
+            while ((length = in.read(bytes)) != -1) {
+                if (!buffer.write(bytes, 0, length)) {
+                    process.destroyForcibly();
+                    return;
                 }
-            } catch (IOException e) {
-                log.error("关闭输入流失败");
             }
+        } catch (IOException e) {
+            log.info("读取进程输出结束：{}", e.getMessage());
         }
     }
 }
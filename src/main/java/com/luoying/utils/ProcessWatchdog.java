@@ -0,0 +1,121 @@
+package com.luoying.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author 落樱的悔恨
+ * 进程超时看门狗
+ * 所有进程共用一个定时线程登记截止时间，进程按时结束后取消登记（取消的任务立即从队列中移除），
+ * 超时后强制销毁进程以及它创建的所有子孙进程；线程数量不随用例数量增长
+ */
+@Slf4j
+public class ProcessWatchdog {
+    // 所有进程共用一个定时线程
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "process-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Process process;
+
+    private final long start;
+
+    private volatile ScheduledFuture<?> future;
+
+    private volatile boolean timedOut;
+
+    // 超时被销毁时已经运行的时间 ms
+    private volatile long elapsed = -1;
+
+    private ProcessWatchdog(Process process) {
+        this.process = process;
+        this.start = System.currentTimeMillis();
+    }
+
+    /**
+     * 登记进程的截止时间
+     *
+     * @param process 进程
+     * @param timeout 超时时间 ms
+     * @return {@link ProcessWatchdog}，进程结束后调用 {@link #cancel()}
+     */
+    public static ProcessWatchdog watch(Process process, long timeout) {
+        ProcessWatchdog watchdog = new ProcessWatchdog(process);
+        watchdog.future = TIMER.schedule(watchdog::expire, timeout, TimeUnit.MILLISECONDS);
+        return watchdog;
+    }
+
+    /**
+     * 取消登记
+     */
+    public void cancel() {
+        future.cancel(false);
+    }
+
+    /**
+     * 是否因为超时被销毁
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * 超时被销毁时已经运行的时间 ms，没有超时返回 -1
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    private void expire() {
+        if (!process.isAlive()) {
+            return;
+        }
+        elapsed = System.currentTimeMillis() - start;
+        timedOut = true;
+        log.info("超时了，销毁进程树 耗时:{}ms", elapsed);
+        destroyTree(process);
+    }
+
+    /**
+     * 强制销毁进程以及它的所有子孙进程
+     * 先取得子孙进程再销毁（父进程退出后子进程会被过继，无法再查到）；
+     * ProcessHandle 从 JDK 9 开始提供，通过反射调用，JDK 8 上只销毁进程本身
+     *
+     * @param process 进程
+     */
+    public static void destroyTree(Process process) {
+        List<Object> descendants = new ArrayList<>();
+        Method destroyForcibly = null;
+        try {
+            Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+            Object handle = Process.class.getMethod("toHandle").invoke(process);
+            Stream<?> stream = (Stream<?>) handleClass.getMethod("descendants").invoke(handle);
+            descendants = stream.collect(Collectors.toList());
+            destroyForcibly = handleClass.getMethod("destroyForcibly");
+        } catch (Exception e) {
+            // JDK 8
+        }
+        process.destroyForcibly();
+        for (Object descendant : descendants) {
+            try {
+                destroyForcibly.invoke(descendant);
+            } catch (Exception e) {
+                log.info("销毁子进程失败：{}", e.getMessage());
+            }
+        }
+    }
+}
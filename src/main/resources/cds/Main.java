@@ -0,0 +1,44 @@
+// CDS 归档的预热程序：加载用户代码常用的 JDK 类，生成类列表
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class Main {
+    public static void main(String[] args) throws IOException {
+        Scanner scanner = new Scanner(System.in);
+        int a = scanner.nextInt();
+        int b = scanner.nextInt();
+        System.out.println(a + b);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream("3 4\n5\n".getBytes())));
+        StringTokenizer tokenizer = new StringTokenizer(reader.readLine());
+        StreamTokenizer streamTokenizer = new StreamTokenizer(reader);
+        streamTokenizer.nextToken();
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        List<Integer> list = new ArrayList<>();
+        while (tokenizer.hasMoreTokens()) {
+            list.add(Integer.parseInt(tokenizer.nextToken()));
+        }
+        list.add((int) streamTokenizer.nval);
+        Map<Integer, Integer> map = new HashMap<>();
+        TreeMap<Integer, Integer> treeMap = new TreeMap<>();
+        Set<Integer> set = new HashSet<>(list);
+        Deque<Integer> deque = new ArrayDeque<>(list);
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.reverseOrder());
+        for (int value : list) {
+            map.merge(value, 1, Integer::sum);
+            treeMap.put(value, value);
+            queue.offer(value);
+        }
+        int[] array = list.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(array);
+        Collections.sort(list);
+        String joined = list.stream().map(String::valueOf).collect(Collectors.joining(","));
+        StringBuilder builder = new StringBuilder(joined).reverse();
+        BigInteger big = BigInteger.valueOf(a).pow(10).add(BigInteger.ONE);
+        long sum = Arrays.stream(array).asLongStream().sum() + Math.max(set.size(), deque.size()) + queue.peek() + treeMap.firstKey();
+        writer.printf("%d %s %.2f%n", sum, builder.length() > 0 ? big.mod(BigInteger.TEN) : "", Math.sqrt(sum));
+        writer.flush();
+    }
+}
@@ -0,0 +1,60 @@
+#!/bin/bash
+# 沙箱用例执行器：一次 exec 执行一次提交的所有输入用例
+#
+# 用法：sandbox-runner <用例目录> <时间限制ms> <内存限制KB(0为不限制)> <输出限制KB> <运行命令...>
+#
+# 用例目录下：
+#   manifest   用例名称列表，每行一个
+#   <name>.in  输入
+# 执行后生成：
+#   <name>.out 标准输出
+#   <name>.err 错误输出
+# 每个用例向标准输出打印一行结果：
+#   <name> <退出码> <耗时ms> <峰值内存KB> <输出字节数> <输出sha256>
+# 耗时取 time 测得的用户程序运行时间（不包括 timeout、time 自身的启动开销），time 被杀死时取整体耗时
+# 某个用例失败（退出码非0）后不再执行后续用例
+
+case_dir="$1"
+time_limit_ms="$2"
+memory_limit_kb="$3"
+output_limit_kb="$4"
+shift 4
+
+# timeout 使用秒，向上取整并多留 1 秒给进程启动
+timeout_seconds=$(( (time_limit_ms + 999) / 1000 + 1 ))
+
+while IFS= read -r name || [ -n "$name" ]; do
+    [ -z "$name" ] && continue
+    input="$case_dir/$name.in"
+    output="$case_dir/$name.out"
+    error="$case_dir/$name.err"
+    usage="$case_dir/$name.usage"
+
+    start=$(date +%s%N)
+    (
+        ulimit -f "$output_limit_kb"
+        if [ "$memory_limit_kb" -gt 0 ]; then
+            ulimit -v "$memory_limit_kb"
+        fi
+        # 超时后 timeout 会杀死整个进程组
+        exec timeout -s KILL "$timeout_seconds" /usr/bin/time -f "%e %M" -o "$usage" "$@"
+    ) < "$input" > "$output" 2> "$error"
+    exit_code=$?
+    end=$(date +%s%N)
+
+    time_ms=$(( (end - start) / 1000000 ))
+    peak_kb=0
+    if [ -s "$usage" ]; then
+        # 程序异常退出时 time 会在第一行输出 "Command exited with non-zero status"
+        read -r elapsed peak_kb < <(tail -n 1 "$usage")
+        # %e 为保留两位小数的秒数，去掉小数点后按 10 进制计算（避免前导 0 被当作 8 进制）
+        time_ms=$(( 10#${elapsed/./} * 10 ))
+    fi
+    output_bytes=$(stat -c %s "$output")
+    output_sha256=$(sha256sum "$output" | cut -d ' ' -f 1)
+    echo "$name $exit_code $time_ms $peak_kb $output_bytes $output_sha256"
+
+    if [ "$exit_code" -ne 0 ] || [ "$time_ms" -ge "$time_limit_ms" ]; then
+        break
+    fi
+done < "$case_dir/manifest"
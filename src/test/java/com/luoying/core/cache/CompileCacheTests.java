@@ -0,0 +1,141 @@
+package com.luoying.core.cache;
+
+import cn.hutool.core.io.FileUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 编译缓存的键以及保存、读取、淘汰测试
+ *
+ * @Author 落樱的悔恨
+ */
+class CompileCacheTests {
+    private static final String CODE = "int main() { return 0; }";
+
+    @TempDir
+    File tempDir;
+
+    private CompileCache compileCache;
+
+    @BeforeEach
+    void init() {
+        compileCache = create(1024 * 1024L);
+    }
+
+    private CompileCache create(long maxSize) {
+        CompileCache cache = new CompileCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "cacheDir", new File(tempDir, "cache").getAbsolutePath());
+        ReflectionTestUtils.setField(cache, "maxSize", maxSize);
+        cache.init();
+        return cache;
+    }
+
+    private static String compileCmd(File dir) {
+        return String.format("g++ -O2 %s/main.cpp -o %s/main", dir.getAbsolutePath(), dir.getAbsolutePath());
+    }
+
+    /**
+     * 模拟一次提交：代码文件以及编译产物
+     */
+    private File submission(String name, String artifact) {
+        File dir = FileUtil.mkdir(new File(tempDir, name));
+        FileUtil.writeString(CODE, new File(dir, "main.cpp"), StandardCharsets.UTF_8);
+        if (artifact != null) {
+            FileUtil.writeString(artifact, new File(dir, "main"), StandardCharsets.UTF_8);
+        }
+        return dir;
+    }
+
+    @Test
+    void testKey() {
+        File first = new File(tempDir, "a");
+        File second = new File(tempDir, "b");
+        String key = compileCache.key("CppNativeCodeSandBox", compileCmd(first), first, CODE);
+        // 用户代码目录不参与计算键
+        assertEquals(key, compileCache.key("CppNativeCodeSandBox", compileCmd(second), second, CODE));
+        assertEquals(64, key.length());
+        // 沙箱、编译命令（例如编译参数）、代码任意一个不同，键都不同
+        assertNotEquals(key, compileCache.key("CppDockerCodeSandBox", compileCmd(first), first, CODE));
+        assertNotEquals(key, compileCache.key("CppNativeCodeSandBox", compileCmd(first).replace("-O2", "-O0"), first, CODE));
+        assertNotEquals(key, compileCache.key("CppNativeCodeSandBox", compileCmd(first), first, CODE + "\n"));
+        // 分隔符避免拼接后相同
+        assertNotEquals(compileCache.key("ab", "c", first, "d"), compileCache.key("a", "bc", first, "d"));
+    }
+
+    @Test
+    void testKeyWithCompileOptions() {
+        // 进程内编译时编译命令相同，--release 不同的编译产物不能共用
+        File dir = new File(tempDir, "java");
+        String javac = "javac -encoding utf-8 " + new File(dir, "Main.java").getAbsolutePath();
+        String release11 = compileCache.key("JavaDockerCodeSandBox", javac, "javax.tools 17 --release 11", dir, CODE);
+        String release8 = compileCache.key("JavaDockerCodeSandBox", javac, "javax.tools 17 --release 8", dir, CODE);
+        assertNotEquals(release11, release8);
+        assertEquals(release11, compileCache.key("JavaDockerCodeSandBox", javac, "javax.tools 17 --release 11", dir, CODE));
+        assertNotEquals(compileCache.key("sandbox", "cmd", dir, CODE), release11);
+    }
+
+    @Test
+    void testStoreAndRestore() {
+        File compiled = submission("compiled", "binary");
+        String key = compileCache.key("CppNativeCodeSandBox", compileCmd(compiled), compiled, CODE);
+        File next = submission("next", null);
+        assertFalse(compileCache.restore(key, next));
+
+        compileCache.store(key, compiled, "main.cpp");
+        assertTrue(compileCache.restore(key, next));
+        assertEquals("binary", FileUtil.readString(new File(next, "main"), StandardCharsets.UTF_8));
+        // 代码文件不保存到缓存
+        assertFalse(new File(tempDir, "cache/" + key + "/main.cpp").exists());
+        // 修改复制出来的产物不影响缓存
+        FileUtil.writeString("changed", new File(next, "main"), StandardCharsets.UTF_8);
+        File another = submission("another", null);
+        assertTrue(compileCache.restore(key, another));
+        assertEquals("binary", FileUtil.readString(new File(another, "main"), StandardCharsets.UTF_8));
+        assertEquals(2L, compileCache.snapshot().get("hits"));
+        assertEquals(1L, compileCache.snapshot().get("misses"));
+    }
+
+    @Test
+    void testReloadAndEvict() {
+        File first = submission("first", "0123456789");
+        String firstKey = compileCache.key("sandbox", "cmd", first, "first");
+        compileCache.store(firstKey, first, "main.cpp");
+        File second = submission("second", "0123456789");
+        String secondKey = compileCache.key("sandbox", "cmd", second, "second");
+        compileCache.store(secondKey, second, "main.cpp");
+
+        // 重启后从磁盘加载已有的缓存
+        CompileCache reloaded = create(1024 * 1024L);
+        assertEquals(2, reloaded.snapshot().get("entries"));
+        assertTrue(reloaded.restore(firstKey, submission("restored", null)));
+
+        // 总大小超过上限时淘汰最近最少使用的缓存（firstKey 刚被读取过，secondKey 很久没有使用）
+        assertTrue(new File(tempDir, "cache/" + secondKey).setLastModified(System.currentTimeMillis() - 60000));
+        CompileCache small = create(25L);
+        assertTrue(small.restore(firstKey, submission("touch", null)));
+        File third = submission("third", "0123456789");
+        String thirdKey = small.key("sandbox", "cmd", third, "third");
+        small.store(thirdKey, third, "main.cpp");
+        assertEquals(2, small.snapshot().get("entries"));
+        assertFalse(small.restore(secondKey, submission("evicted", null)));
+        assertTrue(small.restore(firstKey, submission("kept", null)));
+        assertTrue(small.restore(thirdKey, submission("newest", null)));
+    }
+
+    @Test
+    void testDisabled() {
+        ReflectionTestUtils.setField(compileCache, "enabled", false);
+        File compiled = submission("compiled", "binary");
+        String key = compileCache.key("sandbox", "cmd", compiled, CODE);
+        compileCache.store(key, compiled, "main.cpp");
+        assertFalse(compileCache.restore(key, submission("next", null)));
+    }
+}
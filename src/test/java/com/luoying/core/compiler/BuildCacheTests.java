@@ -0,0 +1,68 @@
+package com.luoying.core.compiler;
+
+import cn.hutool.core.io.FileUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Go、Rust 编译缓存的清理测试（不依赖 Docker）
+ *
+ * @Author 落樱的悔恨
+ */
+class BuildCacheTests {
+    @TempDir
+    File tempDir;
+
+    private BuildCache buildCache;
+
+    @BeforeEach
+    void init() {
+        buildCache = new BuildCache();
+        ReflectionTestUtils.setField(buildCache, "cacheDir", tempDir.getAbsolutePath());
+        ReflectionTestUtils.setField(buildCache, "rustOptLevel", "1");
+        ReflectionTestUtils.setField(buildCache, "rustCodegenUnits", 16);
+        ReflectionTestUtils.setField(buildCache, "rustIncremental", true);
+    }
+
+    /**
+     * 写入指定大小的缓存文件，最后修改时间为 time
+     */
+    private File write(String path, int size, long time) {
+        File file = FileUtil.writeBytes(new byte[size], new File(tempDir, path));
+        assertTrue(file.setLastModified(time));
+        return file;
+    }
+
+    @Test
+    void testRustFlags() {
+        assertTrue(buildCache.rustFlags().endsWith("-C incremental=" + new File(tempDir, "rust").getAbsolutePath()));
+        ReflectionTestUtils.setField(buildCache, "rustIncremental", false);
+        assertEquals("-C opt-level=1 -C codegen-units=16", buildCache.rustFlags());
+    }
+
+    @Test
+    void testTrimDeletesRustSessionsAsAWhole() {
+        ReflectionTestUtils.setField(buildCache, "maxSize", 1000L);
+        long now = System.currentTimeMillis();
+        // 最旧的会话目录中有一个文件较新，整个会话目录按最新的文件计算
+        write("rust/main-abc/s-old/dep-graph.bin", 300, now - 50000);
+        write("rust/main-abc/s-old/query-cache.bin", 300, now - 40000);
+        write("go/00/old-a", 300, now - 30000);
+        write("rust/main-abc/s-new/dep-graph.bin", 300, now - 1000);
+        write("go/01/new-b", 100, now);
+
+        buildCache.trim();
+
+        // 总大小 1300 超过上限，按缓存项从旧到新删除，直到不超过 800
+        assertFalse(new File(tempDir, "rust/main-abc/s-old").exists());
+        assertTrue(new File(tempDir, "go/00/old-a").exists());
+        assertTrue(new File(tempDir, "rust/main-abc/s-new/dep-graph.bin").exists());
+        assertTrue(new File(tempDir, "go/01/new-b").exists());
+    }
+}
@@ -0,0 +1,111 @@
+package com.luoying.core.nativ;
+
+import com.luoying.model.ExecuteMessage;
+import com.luoying.model.enums.JudgeInfoMessagenum;
+import com.luoying.utils.ProcessUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 原生沙箱内核资源限制的判定结果测试（不依赖 Docker）
+ *
+ * @Author 落樱的悔恨
+ */
+class RlimitLauncherTests {
+    @TempDir
+    File tempDir;
+
+    private RlimitLauncher rlimitLauncher;
+
+    @BeforeEach
+    void init() {
+        rlimitLauncher = new RlimitLauncher();
+        ReflectionTestUtils.setField(rlimitLauncher, "enabled", true);
+        ReflectionTestUtils.setField(rlimitLauncher, "memory", 256L * 1024 * 1024);
+        ReflectionTestUtils.setField(rlimitLauncher, "cpuTime", 1L);
+        ReflectionTestUtils.setField(rlimitLauncher, "fileSize", 1024L * 1024);
+        ReflectionTestUtils.setField(rlimitLauncher, "processes", 0L);
+    }
+
+    private static ExecuteMessage message(int exitValue, Long time, Long cpuTime, Long memory, String errorMessage) {
+        ExecuteMessage executeMessage = new ExecuteMessage();
+        executeMessage.setExitValue(exitValue);
+        executeMessage.setTime(time);
+        executeMessage.setCpuTime(cpuTime);
+        executeMessage.setMemory(memory);
+        executeMessage.setErrorMessage(errorMessage);
+        return executeMessage;
+    }
+
+    @Test
+    void testVerdictBySignal() {
+        ReflectionTestUtils.setField(rlimitLauncher, "available", true);
+        // 正常结束、普通的运行错误
+        assertNull(rlimitLauncher.verdict(message(0, 10L, 10L, 1024L, null), true));
+        assertNull(rlimitLauncher.verdict(message(1, 10L, 10L, 1024L, "error"), true));
+        // SIGXCPU：超出 CPU 时间软限制
+        assertEquals(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 24, 1000L, 1000L, 1024L, null), true));
+        // SIGKILL：超过软限制后达到硬限制，采样的 CPU 时间偏小时参考墙上时间
+        assertEquals(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 9, 2000L, 1990L, 1024L, null), true));
+        assertEquals(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 9, 2010L, 900L, 1024L, null), true));
+        assertEquals(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 9, 2010L, null, 1024L, null), true));
+        // 没有运行到软限制就被 SIGKILL 终止，不是超时
+        assertNull(rlimitLauncher.verdict(message(128 + 9, 100L, 100L, 1024L, null), true));
+        // SIGXFSZ：超出写入文件的大小限制
+        assertEquals(JudgeInfoMessagenum.OUTPUT_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 25, 10L, 10L, 1024L, null), true));
+        // Java 堆内存不足
+        assertEquals(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(1, 10L, 10L, 1024L, "Exception in thread \"main\" java.lang.OutOfMemoryError: Java heap space"), false));
+        // 限制地址空间时，分配失败后 abort 或者访问空指针
+        assertEquals(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 6, 10L, 10L, 1024L, "terminate called after throwing an instance of 'std::bad_alloc'"), true));
+        assertEquals(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED, rlimitLauncher.verdict(message(128 + 11, 10L, 10L, 250L * 1024, null), true));
+        assertNull(rlimitLauncher.verdict(message(128 + 11, 10L, 10L, 1024L, null), true));
+        assertNull(rlimitLauncher.verdict(message(128 + 6, 10L, 10L, 1024L, "std::bad_alloc"), false));
+    }
+
+    @Test
+    void testUnavailable() {
+        ReflectionTestUtils.setField(rlimitLauncher, "available", false);
+        assertEquals("./main", rlimitLauncher.wrap("./main", true));
+        assertEquals(3000L, rlimitLauncher.watchdogTimeout(3000L));
+        assertNull(rlimitLauncher.verdict(message(128 + 24, 1000L, 1000L, 1024L, null), true));
+    }
+
+    @Test
+    void testWatchdogAfterHardLimit() {
+        ReflectionTestUtils.setField(rlimitLauncher, "available", true);
+        // 硬限制为 2 秒，看门狗至少再等待 2 秒
+        assertEquals(4000L, rlimitLauncher.watchdogTimeout(1000L));
+        assertEquals(10000L, rlimitLauncher.watchdogTimeout(10000L));
+        assertEquals("prlimit --as=268435456 --cpu=1:2 --fsize=1048576 ./main", rlimitLauncher.wrap("./main", true));
+        assertEquals("prlimit --cpu=1:2 --fsize=1048576 java Main", rlimitLauncher.wrap("java Main", false));
+    }
+
+    @Test
+    void testCpuTimeLimit() throws Exception {
+        rlimitLauncher.init();
+        assumeTrue(rlimitLauncher.isAvailable(), "prlimit 不可用");
+        // 一直占用 CPU 的程序
+        Process process = Runtime.getRuntime().exec(rlimitLauncher.wrap("sha256sum /dev/zero", true));
+        ExecuteMessage executeMessage = ProcessUtil.handleProcessInteraction(process, "", "运行");
+        assertEquals(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED, rlimitLauncher.verdict(executeMessage, true));
+    }
+
+    @Test
+    void testFileSizeLimit() throws Exception {
+        rlimitLauncher.init();
+        assumeTrue(rlimitLauncher.isAvailable(), "prlimit 不可用");
+        // 写入超过 1MB 的文件
+        File file = new File(tempDir, "out");
+        Process process = Runtime.getRuntime().exec(rlimitLauncher.wrap("dd if=/dev/zero of=" + file.getAbsolutePath() + " bs=1048576 count=4", true));
+        ExecuteMessage executeMessage = ProcessUtil.handleProcessInteraction(process, "", "运行");
+        assertEquals(JudgeInfoMessagenum.OUTPUT_LIMIT_EXCEEDED, rlimitLauncher.verdict(executeMessage, true));
+        assertTrue(file.length() <= 1024 * 1024);
+    }
+}
@@ -0,0 +1,211 @@
+package com.luoying.core.pool;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.*;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.HostConfig;
+import com.luoying.config.ContainerPoolProperties;
+import com.luoying.core.monitor.ContainerStateCache;
+import com.luoying.exception.ContainerAcquireTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 容器池的借出、归还以及恢复测试（使用模拟的 DockerClient，不依赖 Docker）
+ *
+ * @Author 落樱的悔恨
+ */
+class ContainerPoolTests {
+    private DockerClient dockerClient;
+
+    private ContainerStateCache containerStateCache;
+
+    private ContainerPool containerPool;
+
+    // 运行中的容器id
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    // 已被删除的容器id
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    private final AtomicInteger restartedCount = new AtomicInteger();
+
+    // 创建容器时使用的 HostConfig
+    private final List<HostConfig> hostConfigs = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void init() {
+        dockerClient = mock(DockerClient.class);
+        ListContainersCmd listContainersCmd = mock(ListContainersCmd.class, RETURNS_SELF);
+        doReturn(Collections.emptyList()).when(listContainersCmd).exec();
+        when(dockerClient.listContainersCmd()).thenReturn(listContainersCmd);
+        when(dockerClient.createContainerCmd(anyString())).thenAnswer(invocation -> {
+            CreateContainerCmd createContainerCmd = mock(CreateContainerCmd.class, RETURNS_SELF);
+            doAnswer(hostConfig -> {
+                hostConfigs.add(hostConfig.getArgument(0));
+                return createContainerCmd;
+            }).when(createContainerCmd).withHostConfig(any(HostConfig.class));
+            doAnswer(ignored -> {
+                CreateContainerResponse response = new CreateContainerResponse();
+                response.setId("container-" + createdCount.incrementAndGet());
+                return response;
+            }).when(createContainerCmd).exec();
+            return createContainerCmd;
+        });
+        when(dockerClient.startContainerCmd(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            StartContainerCmd startContainerCmd = mock(StartContainerCmd.class);
+            doAnswer(ignored -> {
+                running.add(id);
+                return null;
+            }).when(startContainerCmd).exec();
+            return startContainerCmd;
+        });
+        when(dockerClient.restartContainerCmd(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            RestartContainerCmd restartContainerCmd = mock(RestartContainerCmd.class, RETURNS_SELF);
+            doAnswer(ignored -> {
+                if (removed.contains(id)) {
+                    throw new NotFoundException("No such container: " + id);
+                }
+                restartedCount.incrementAndGet();
+                running.add(id);
+                return null;
+            }).when(restartContainerCmd).exec();
+            return restartContainerCmd;
+        });
+        when(dockerClient.stopContainerCmd(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            StopContainerCmd stopContainerCmd = mock(StopContainerCmd.class, RETURNS_SELF);
+            doAnswer(ignored -> {
+                running.remove(id);
+                return null;
+            }).when(stopContainerCmd).exec();
+            return stopContainerCmd;
+        });
+        containerStateCache = mock(ContainerStateCache.class);
+        when(containerStateCache.isRunning(anyString())).thenAnswer(invocation -> running.contains(invocation.<String>getArgument(0)));
+
+        ContainerPoolProperties properties = new ContainerPoolProperties();
+        properties.setSize(2);
+        properties.setAcquireTimeout(200L);
+        properties.setMaintainInterval(50L);
+        properties.setMinRunning(2);
+        containerPool = new ContainerPool(dockerClient, containerStateCache, properties, Collections.emptyList());
+        containerPool.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        containerPool.shutdown();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void testAcquireAndRelease() throws Exception {
+        assertEquals(2, containerPool.getSize());
+        assertEquals(2, createdCount.get());
+        ContainerLease lease = containerPool.acquire();
+        // 借出前启动已停止的容器
+        assertTrue(running.contains(lease.getContainerId()));
+        assertEquals(1, containerPool.getIdleCount());
+        // 重复归还只归还一次
+        lease.close();
+        lease.close();
+        assertEquals(2, containerPool.getIdleCount());
+        // 最近归还的容器优先借出，运行中的容器被复用
+        ContainerLease again = containerPool.acquire();
+        assertEquals(lease.getContainerId(), again.getContainerId());
+        again.close();
+        verify(dockerClient, times(1)).startContainerCmd(lease.getContainerId());
+    }
+
+    @Test
+    void testReadonlyRootfs() {
+        assertEquals(2, hostConfigs.size());
+        for (HostConfig hostConfig : hostConfigs) {
+            assertTrue(hostConfig.getReadonlyRootfs());
+        }
+    }
+
+    @Test
+    void testAcquireTimeout() throws Exception {
+        ContainerLease first = containerPool.acquire();
+        ContainerLease second = containerPool.acquire();
+        assertNull(containerPool.tryAcquire());
+        ContainerAcquireTimeoutException exception = assertThrows(ContainerAcquireTimeoutException.class, containerPool::acquire);
+        assertEquals("获取容器超时", exception.getMessage());
+        first.close();
+        second.close();
+        assertEquals(2, containerPool.getIdleCount());
+    }
+
+    @Test
+    void testBrokenLeaseRecovered() throws Exception {
+        ContainerLease lease = containerPool.acquire();
+        String containerId = lease.getContainerId();
+        lease.markBroken();
+        lease.close();
+        // 被破坏的容器重启后才放回空闲队列
+        await(() -> containerPool.getIdleCount() == 2);
+        assertEquals(1, restartedCount.get());
+        verify(dockerClient).restartContainerCmd(containerId);
+    }
+
+    @Test
+    void testRemovedContainerRecreated() throws Exception {
+        ContainerLease lease = containerPool.acquire();
+        String containerId = lease.getContainerId();
+        // 容器被外部删除
+        removed.add(containerId);
+        running.remove(containerId);
+        lease.markBroken();
+        lease.close();
+        await(() -> containerPool.getIdleCount() == 2);
+        assertEquals(3, createdCount.get());
+        // 重建的容器处于运行状态，借出时不需要再启动
+        ContainerLease recreated = containerPool.acquire();
+        ContainerLease other = containerPool.acquire();
+        String recreatedId = "container-3".equals(recreated.getContainerId()) ? recreated.getContainerId() : other.getContainerId();
+        assertEquals("container-3", recreatedId);
+        assertTrue(running.contains(recreatedId));
+        recreated.close();
+        other.close();
+    }
+
+    @Test
+    void testExternallyStoppedContainerRestarted() throws Exception {
+        ContainerLease lease = containerPool.acquire();
+        String containerId = lease.getContainerId();
+        lease.close();
+        // 容器在空闲期间被外部停止，借出时重新启动
+        running.remove(containerId);
+        ContainerLease again = containerPool.acquire();
+        assertEquals(containerId, again.getContainerId());
+        assertTrue(running.contains(containerId));
+        verify(dockerClient, times(2)).startContainerCmd(containerId);
+        again.close();
+    }
+}
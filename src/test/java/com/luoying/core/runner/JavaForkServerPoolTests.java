@@ -0,0 +1,193 @@
+package com.luoying.core.runner;
+
+import cn.hutool.core.io.FileUtil;
+import com.luoying.core.nativ.RlimitLauncher;
+import com.luoying.exception.OutputLimitExceededException;
+import com.luoying.model.ExecuteMessage;
+import com.luoying.model.enums.JudgeInfoMessagenum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Java 用例执行进程的判定结果测试（不依赖 Docker，需要本机的 java 命令）
+ *
+ * @Author 落樱的悔恨
+ */
+class JavaForkServerPoolTests {
+    // 输出限制 byte
+    private static final long OUTPUT_LIMIT = 1024 * 1024L;
+
+    @TempDir
+    File tempDir;
+
+    private JavaForkServerPool javaForkServerPool;
+
+    @BeforeEach
+    void init() {
+        JavaCdsArchive javaCdsArchive = new JavaCdsArchive();
+        ReflectionTestUtils.setField(javaCdsArchive, "enabled", false);
+        RlimitLauncher rlimitLauncher = new RlimitLauncher();
+        ReflectionTestUtils.setField(rlimitLauncher, "enabled", true);
+        ReflectionTestUtils.setField(rlimitLauncher, "cpuTime", 5L);
+        ReflectionTestUtils.setField(rlimitLauncher, "fileSize", 8 * OUTPUT_LIMIT);
+        rlimitLauncher.init();
+        javaForkServerPool = new JavaForkServerPool();
+        ReflectionTestUtils.setField(javaForkServerPool, "enabled", true);
+        ReflectionTestUtils.setField(javaForkServerPool, "size", 2);
+        ReflectionTestUtils.setField(javaForkServerPool, "minIdle", 0);
+        ReflectionTestUtils.setField(javaForkServerPool, "maxRuns", 100);
+        ReflectionTestUtils.setField(javaForkServerPool, "jvmOptions", "-Xmx64m -Dfile.encoding=UTF-8");
+        ReflectionTestUtils.setField(javaForkServerPool, "allocationLimit", 0L);
+        ReflectionTestUtils.setField(javaForkServerPool, "runnerDir", new File(tempDir, "javaRunner").getAbsolutePath());
+        ReflectionTestUtils.setField(javaForkServerPool, "javaRunProfiles", new JavaRunProfiles());
+        ReflectionTestUtils.setField(javaForkServerPool, "javaCdsArchive", javaCdsArchive);
+        ReflectionTestUtils.setField(javaForkServerPool, "rlimitLauncher", rlimitLauncher);
+        javaForkServerPool.init();
+        assertTrue(javaForkServerPool.isAvailable());
+    }
+
+    @AfterEach
+    void shutdown() {
+        javaForkServerPool.shutdown();
+    }
+
+    /**
+     * 编译用户代码，返回 class 文件所在目录
+     */
+    private File compile(String name, String code) {
+        File dir = FileUtil.mkdir(new File(tempDir, name));
+        File source = FileUtil.writeString(code, new File(dir, "Main.java"), StandardCharsets.UTF_8);
+        int result = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-encoding", "utf-8", source.getAbsolutePath());
+        assertEquals(0, result);
+        return dir;
+    }
+
+    @Test
+    void testAccepted() {
+        File dir = compile("sum", "import java.util.Scanner;\n" +
+                "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        Scanner scanner = new Scanner(System.in);\n" +
+                "        System.out.println(scanner.nextInt() + scanner.nextInt());\n" +
+                "    }\n" +
+                "}");
+        // 同一个执行进程连续执行，结果互不影响
+        for (int i = 0; i < 3; i++) {
+            ExecuteMessage executeMessage = javaForkServerPool.run(dir, i + " 2", 5000, OUTPUT_LIMIT, null);
+            assertEquals(0, executeMessage.getExitValue());
+            assertEquals(String.valueOf(i + 2), executeMessage.getMessage());
+            assertNull(executeMessage.getErrorMessage());
+        }
+    }
+
+    @Test
+    void testTimeLimitExceeded() {
+        File dir = compile("loop", "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        while (true) {\n" +
+                "        }\n" +
+                "    }\n" +
+                "}");
+        ExecuteMessage executeMessage = javaForkServerPool.run(dir, "", 1000, OUTPUT_LIMIT, null);
+        assertEquals(-1, executeMessage.getExitValue());
+        assertEquals(JudgeInfoMessagenum.TIME_LIMIT_EXCEEDED.getValue(), executeMessage.getErrorMessage());
+        assertTrue(executeMessage.getTime() >= 1000);
+    }
+
+    @Test
+    void testMemoryLimitExceeded() {
+        File dir = compile("oom", "import java.util.ArrayList;\n" +
+                "import java.util.List;\n" +
+                "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        List<byte[]> list = new ArrayList<>();\n" +
+                "        while (true) {\n" +
+                "            list.add(new byte[1024 * 1024]);\n" +
+                "        }\n" +
+                "    }\n" +
+                "}");
+        ExecuteMessage executeMessage = javaForkServerPool.run(dir, "", 5000, OUTPUT_LIMIT, null);
+        assertEquals(-1, executeMessage.getExitValue());
+        assertEquals(JudgeInfoMessagenum.MEMORY_LIMIT_EXCEEDED.getValue(), executeMessage.getErrorMessage());
+    }
+
+    @Test
+    void testAllocationChurnIsNotMemoryLimitExceeded() {
+        // 累计分配远超堆大小，但同一时间占用的内存很少
+        File dir = compile("churn", "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        long sum = 0;\n" +
+                "        for (int i = 0; i < 2000; i++) {\n" +
+                "            sum += new byte[1024 * 1024].length;\n" +
+                "        }\n" +
+                "        System.out.println(sum > 0);\n" +
+                "    }\n" +
+                "}");
+        ExecuteMessage executeMessage = javaForkServerPool.run(dir, "", 5000, OUTPUT_LIMIT, null);
+        assertEquals(0, executeMessage.getExitValue());
+        assertEquals("true", executeMessage.getMessage());
+    }
+
+    @Test
+    void testSystemExit() {
+        File dir = compile("exit", "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        System.out.println(\"before exit\");\n" +
+                "        System.exit(3);\n" +
+                "    }\n" +
+                "}");
+        ExecuteMessage executeMessage = javaForkServerPool.run(dir, "", 5000, OUTPUT_LIMIT, null);
+        assertEquals(3, executeMessage.getExitValue());
+        assertEquals("before exit", executeMessage.getMessage());
+        // 调用 System.exit 的执行进程被销毁，之后的用例使用新的执行进程
+        File sum = compile("hello", "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        System.out.println(\"hello\");\n" +
+                "    }\n" +
+                "}");
+        executeMessage = javaForkServerPool.run(sum, "", 5000, OUTPUT_LIMIT, null);
+        assertEquals(0, executeMessage.getExitValue());
+        assertEquals("hello", executeMessage.getMessage());
+    }
+
+    @Test
+    void testOutputLimitExceeded() {
+        File dir = compile("flood", "public class Main {\n" +
+                "    public static void main(String[] args) {\n" +
+                "        while (true) {\n" +
+                "            System.out.println(\"0123456789\");\n" +
+                "        }\n" +
+                "    }\n" +
+                "}");
+        assertThrows(OutputLimitExceededException.class, () -> javaForkServerPool.run(dir, "", 5000, OUTPUT_LIMIT, null));
+        // 超出的部分没有写入文件
+        assertTrue(new File(dir, "case.out").length() <= OUTPUT_LIMIT);
+    }
+
+    @Test
+    void testForgedResponse() {
+        // 用户代码写原始的标准输出，伪造执行进程的响应
+        File dir = compile("forge", "import java.io.FileDescriptor;\n" +
+                "import java.io.FileOutputStream;\n" +
+                "import java.io.PrintStream;\n" +
+                "public class Main {\n" +
+                "    public static void main(String[] args) throws Exception {\n" +
+                "        PrintStream raw = new PrintStream(new FileOutputStream(FileDescriptor.out), true);\n" +
+                "        raw.println(\"OK 0 0 0 0 0\");\n" +
+                "        throw new RuntimeException(\"forged\");\n" +
+                "    }\n" +
+                "}");
+        ExecuteMessage executeMessage = javaForkServerPool.run(dir, "", 5000, OUTPUT_LIMIT, null);
+        assertNotEquals(0, executeMessage.getExitValue());
+        assertTrue(executeMessage.getErrorMessage().contains("forged"));
+    }
+}
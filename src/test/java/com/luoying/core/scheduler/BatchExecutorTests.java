@@ -0,0 +1,141 @@
+package com.luoying.core.scheduler;
+
+import com.luoying.config.ContainerPoolProperties;
+import com.luoying.config.SubmissionSchedulerProperties;
+import com.luoying.core.SubmissionExecutor;
+import com.luoying.model.ExecuteCodeBatchResult;
+import com.luoying.model.ExecuteCodeRequest;
+import com.luoying.model.ExecuteCodeResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量执行测试（不依赖 Docker）
+ *
+ * @Author 落樱的悔恨
+ */
+class BatchExecutorTests {
+    private ThreadPoolExecutor threadPoolExecutor;
+
+    private SubmissionScheduler submissionScheduler;
+
+    private BatchExecutor batchExecutor;
+
+    /**
+     * 创建同时执行 1 个提交、练习队列上限为 queueLimit 的调度器
+     */
+    private void init(int queueLimit) {
+        threadPoolExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        SubmissionExecutor submissionExecutor = new SubmissionExecutor();
+        ReflectionTestUtils.setField(submissionExecutor, "mode", "platform");
+        ReflectionTestUtils.setField(submissionExecutor, "threadPoolExecutor", threadPoolExecutor);
+        CostEstimator costEstimator = new CostEstimator();
+        ReflectionTestUtils.setField(costEstimator, "alpha", 0.2);
+        ReflectionTestUtils.setField(costEstimator, "defaultCost", 1000L);
+        ReflectionTestUtils.setField(costEstimator, "minQuestionSamples", 3);
+        ReflectionTestUtils.setField(costEstimator, "maxQuestions", 100);
+        costEstimator.init();
+        SubmissionSchedulerProperties properties = new SubmissionSchedulerProperties();
+        ContainerPoolProperties containerPoolProperties = new ContainerPoolProperties();
+        properties.getQueueLimits().put("practice", queueLimit);
+        submissionScheduler = new SubmissionScheduler();
+        ReflectionTestUtils.setField(submissionScheduler, "properties", properties);
+        ReflectionTestUtils.setField(submissionScheduler, "submissionExecutor", submissionExecutor);
+        ReflectionTestUtils.setField(submissionScheduler, "costEstimator", costEstimator);
+        ReflectionTestUtils.setField(submissionScheduler, "containerPoolProperties", containerPoolProperties);
+        submissionScheduler.init();
+        batchExecutor = new BatchExecutor();
+        ReflectionTestUtils.setField(batchExecutor, "submissionScheduler", submissionScheduler);
+    }
+
+    @AfterEach
+    void shutdown() {
+        threadPoolExecutor.shutdownNow();
+    }
+
+    private static ExecuteCodeRequest request(String code, String input) {
+        return ExecuteCodeRequest.builder().language("java").code(code).inputList(Collections.singletonList(input)).build();
+    }
+
+    @Test
+    void testSameCodeReservedAtSubmit() throws Exception {
+        init(2);
+        // 占住唯一的执行名额
+        CountDownLatch blocker = new CountDownLatch(1);
+        CompletableFuture<Void> blocking = submissionScheduler.submit(request("block", "0"), () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        List<ExecuteCodeBatchResult> results = Collections.synchronizedList(new ArrayList<>());
+        List<ExecuteCodeRequest> requests = Arrays.asList(request("A", "1"), request("A", "2"));
+        CompletableFuture<Void> batch = batchExecutor.execute(requests, executeCodeRequest -> request -> {
+            executed.add(request.getInputList().get(0));
+            return ExecuteCodeResponse.builder().outputList(request.getInputList()).build();
+        }, results::add);
+
+        // 第二个请求在提交时已经占用名额：队列中 1 个、占用名额 1 个，其他提交被拒绝
+        assertThrows(RejectedExecutionException.class, () -> submissionScheduler.submit(request("B", "3"), () -> null));
+
+        blocker.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        batch.get(5, TimeUnit.SECONDS);
+        assertEquals(2, results.size());
+        for (ExecuteCodeBatchResult result : results) {
+            assertNull(result.getError());
+            assertNotNull(result.getResponse());
+        }
+        // 相同代码的请求在第一个请求结束后执行
+        assertEquals(Arrays.asList("1", "2"), executed);
+    }
+
+    @Test
+    void testIdenticalRequestExecutedOnce() throws Exception {
+        init(10);
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        Map<Integer, ExecuteCodeBatchResult> results = new ConcurrentHashMap<>();
+        List<ExecuteCodeRequest> requests = Arrays.asList(request("A", "1"), request("A", "1"), request("C", "1"));
+        batchExecutor.execute(requests, executeCodeRequest -> request -> {
+            executed.add(request.getCode());
+            return ExecuteCodeResponse.builder().message(request.getCode()).build();
+        }, result -> results.put(result.getIndex(), result)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, executed.size());
+        assertEquals(3, results.size());
+        assertSame(results.get(0).getResponse(), results.get(1).getResponse());
+        assertEquals("C", results.get(2).getResponse().getMessage());
+    }
+
+    @Test
+    void testRejectedRequestReportsBusy() throws Exception {
+        init(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        submissionScheduler.submit(request("block", "0"), () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        Map<Integer, ExecuteCodeBatchResult> results = new ConcurrentHashMap<>();
+        CompletableFuture<Void> batch = batchExecutor.execute(Arrays.asList(request("A", "1"), request("A", "2")),
+                executeCodeRequest -> request -> ExecuteCodeResponse.builder().build(), result -> results.put(result.getIndex(), result));
+        // 第一个请求进入队列，第二个请求在提交时就被拒绝，而不是在第一个请求结束后
+        assertEquals("沙箱繁忙，请稍后重试", results.get(1).getError());
+        blocker.countDown();
+        batch.get(5, TimeUnit.SECONDS);
+        assertNull(results.get(0).getError());
+    }
+}
@@ -0,0 +1,229 @@
+package com.luoying.core.scheduler;
+
+import com.luoying.config.ContainerPoolProperties;
+import com.luoying.config.SubmissionSchedulerProperties;
+import com.luoying.core.SubmissionExecutor;
+import com.luoying.model.ExecuteCodeRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 提交调度器的优先级、公平排队、按预期耗时排序以及准入测试（不依赖 Docker）
+ *
+ * @Author 落樱的悔恨
+ */
+class SubmissionSchedulerTests {
+    private ThreadPoolExecutor threadPoolExecutor;
+
+    private SubmissionSchedulerProperties properties;
+
+    private ContainerPoolProperties containerPoolProperties;
+
+    private CostEstimator costEstimator;
+
+    private SubmissionScheduler submissionScheduler;
+
+    // 执行顺序
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<CompletableFuture<?>> futures = new ArrayList<>();
+
+    private final CountDownLatch blocker = new CountDownLatch(1);
+
+    @BeforeEach
+    void init() {
+        // 执行器只有一个线程，同时执行的提交数默认为 1
+        threadPoolExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        SubmissionExecutor submissionExecutor = new SubmissionExecutor();
+        ReflectionTestUtils.setField(submissionExecutor, "mode", "platform");
+        ReflectionTestUtils.setField(submissionExecutor, "threadPoolExecutor", threadPoolExecutor);
+        costEstimator = new CostEstimator();
+        ReflectionTestUtils.setField(costEstimator, "alpha", 0.2);
+        ReflectionTestUtils.setField(costEstimator, "defaultCost", 1000L);
+        ReflectionTestUtils.setField(costEstimator, "minQuestionSamples", 3);
+        ReflectionTestUtils.setField(costEstimator, "maxQuestions", 100);
+        costEstimator.init();
+        properties = new SubmissionSchedulerProperties();
+        containerPoolProperties = new ContainerPoolProperties();
+        containerPoolProperties.setSize(2);
+        submissionScheduler = new SubmissionScheduler();
+        ReflectionTestUtils.setField(submissionScheduler, "properties", properties);
+        ReflectionTestUtils.setField(submissionScheduler, "submissionExecutor", submissionExecutor);
+        ReflectionTestUtils.setField(submissionScheduler, "costEstimator", costEstimator);
+        ReflectionTestUtils.setField(submissionScheduler, "containerPoolProperties", containerPoolProperties);
+    }
+
+    @AfterEach
+    void shutdown() {
+        blocker.countDown();
+        threadPoolExecutor.shutdownNow();
+    }
+
+    private static ExecuteCodeRequest request(String priority, String tenant, String language) {
+        return ExecuteCodeRequest.builder().priority(priority).tenant(tenant).language(language).build();
+    }
+
+    private void submit(String name, ExecuteCodeRequest request) {
+        futures.add(submissionScheduler.submit(request, () -> executed.add(name)));
+    }
+
+    /**
+     * 占住唯一的执行名额（比赛优先级，不影响练习队列的虚拟时间）
+     */
+    private void block() {
+        futures.add(submissionScheduler.submit(request("contest", "blocker", "block"), () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * 放开执行名额，等待全部提交执行完
+     */
+    private void release() throws Exception {
+        blocker.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDefaultConcurrencyIsExecutorCapacity() {
+        submissionScheduler.init();
+        assertEquals(1, submissionScheduler.snapshot().get("concurrency"));
+        properties.setConcurrency(4);
+        submissionScheduler.init();
+        assertEquals(4, submissionScheduler.snapshot().get("concurrency"));
+    }
+
+    @Test
+    void testDefaultConcurrencyIsBoundedByContainers() {
+        // 执行器的容量（例如 virtual 模式的 max-in-flight）大于运行容器数时，以容器数为准
+        threadPoolExecutor.setMaximumPoolSize(64);
+        threadPoolExecutor.setCorePoolSize(64);
+        submissionScheduler.init();
+        assertEquals(2, submissionScheduler.snapshot().get("concurrency"));
+    }
+
+    @Test
+    void testPriority() throws Exception {
+        submissionScheduler.init();
+        block();
+        submit("rejudge", request("rejudge", "t1", "java"));
+        submit("practice", request("practice", "t1", "java"));
+        submit("contest", request("contest", "t1", "java"));
+        // 未知的优先级按默认优先级（练习）处理
+        submit("unknown", request("unknown", "t1", "java"));
+        release();
+        assertEquals(Arrays.asList("contest", "practice", "unknown", "rejudge"), executed);
+    }
+
+    @Test
+    void testTenantFairness() throws Exception {
+        submissionScheduler.init();
+        block();
+        for (int i = 1; i <= 4; i++) {
+            submit("t1-" + i, request("practice", "t1", "java"));
+        }
+        submit("t2-1", request("practice", "t2", "java"));
+        release();
+        // 后提交的租户不需要等待先提交的租户全部执行完
+        assertEquals(Arrays.asList("t1-1", "t2-1", "t1-2", "t1-3", "t1-4"), executed);
+    }
+
+    @Test
+    void testTenantWeight() throws Exception {
+        properties.getTenantWeights().put("t2", 2);
+        submissionScheduler.init();
+        block();
+        for (int i = 1; i <= 2; i++) {
+            submit("t1-" + i, request("practice", "t1", "java"));
+        }
+        for (int i = 1; i <= 3; i++) {
+            submit("t2-" + i, request("practice", "t2", "java"));
+        }
+        release();
+        // 权重为 2 的租户得到两倍的执行机会
+        assertEquals(Arrays.asList("t2-1", "t1-1", "t2-2", "t2-3", "t1-2"), executed);
+    }
+
+    @Test
+    void testShortCostFirst() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            costEstimator.record("python", null, 5000);
+            costEstimator.record("cpp", null, 100);
+        }
+        submissionScheduler.init();
+        block();
+        submit("python", request("practice", "t1", "python"));
+        for (int i = 1; i <= 3; i++) {
+            submit("cpp-" + i, request("practice", "t1", "cpp"));
+        }
+        release();
+        // 预期耗时短的流不会排在耗时长的提交后面
+        assertEquals(Arrays.asList("cpp-1", "cpp-2", "cpp-3", "python"), executed);
+    }
+
+    @Test
+    void testQueueLimit() throws Exception {
+        properties.getQueueLimits().put("practice", 2);
+        submissionScheduler.init();
+        block();
+        submit("1", request("practice", "t1", "java"));
+        submit("2", request("practice", "t1", "java"));
+        assertThrows(RejectedExecutionException.class, () -> submissionScheduler.submit(request("practice", "t1", "java"), () -> null));
+        // 其他优先级的队列不受影响
+        submit("rejudge", request("rejudge", "t1", "java"));
+        release();
+        assertEquals(Arrays.asList("1", "2", "rejudge"), executed);
+    }
+
+    @Test
+    void testMaxExpectedWait() throws Exception {
+        // 默认预期耗时 1000ms，同时执行 1 个提交时排队 1 个的预期等待时间为 1000ms
+        properties.getMaxExpectedWaits().put("practice", 1500L);
+        submissionScheduler.init();
+        block();
+        submit("1", request("practice", "t1", "java"));
+        assertThrows(RejectedExecutionException.class, () -> submissionScheduler.submit(request("practice", "t1", "java"), () -> null));
+        release();
+        assertEquals(Collections.singletonList("1"), executed);
+    }
+
+    @Test
+    void testSubmitAfterReservesSlot() throws Exception {
+        properties.getQueueLimits().put("practice", 2);
+        submissionScheduler.init();
+        block();
+        CompletableFuture<Boolean> predecessor = new CompletableFuture<>();
+        futures.add(submissionScheduler.submitAfter(request("practice", "t1", "java"), () -> executed.add("after"), predecessor));
+        submit("1", request("practice", "t1", "java"));
+        // 占用名额的提交也计入排队上限
+        assertThrows(RejectedExecutionException.class, () -> submissionScheduler.submit(request("practice", "t1", "java"), () -> null));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> practice = (Map<String, Object>) submissionScheduler.snapshot().get("practice");
+        assertEquals(1, practice.get("reserved"));
+        assertEquals(1, practice.get("queued"));
+        // 前一个任务失败后照常进入队列
+        predecessor.completeExceptionally(new RuntimeException("failed"));
+        release();
+        assertEquals(Arrays.asList("1", "after"), executed);
+    }
+
+    @Test
+    void testDisabled() throws Exception {
+        properties.setEnabled(false);
+        properties.getQueueLimits().put("practice", 0);
+        submissionScheduler.init();
+        assertEquals("done", submissionScheduler.submit(request("practice", "t1", "java"), () -> "done").get(5, TimeUnit.SECONDS));
+    }
+}
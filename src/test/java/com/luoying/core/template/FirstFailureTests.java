@@ -0,0 +1,50 @@
+package com.luoying.core.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片共享的第一个失败用例测试（不依赖 Docker）
+ *
+ * @Author 落樱的悔恨
+ */
+class FirstFailureTests {
+    @Test
+    void testOnlyLaterCasesAreSkipped() {
+        DockerCodeSandBoxTemplate.FirstFailure firstFailure = new DockerCodeSandBoxTemplate.FirstFailure();
+        assertFalse(firstFailure.skips(100));
+        firstFailure.mark(5);
+        // 前面的分片仍要执行完
+        assertFalse(firstFailure.skips(0));
+        assertFalse(firstFailure.skips(5));
+        assertTrue(firstFailure.skips(6));
+        // 更早的失败覆盖之前的记录，更晚的失败不影响
+        firstFailure.mark(8);
+        assertFalse(firstFailure.skips(5));
+        firstFailure.mark(2);
+        assertTrue(firstFailure.skips(3));
+    }
+
+    @Test
+    void testRunningLaterCasesAreAborted() {
+        DockerCodeSandBoxTemplate.FirstFailure firstFailure = new DockerCodeSandBoxTemplate.FirstFailure();
+        AtomicBoolean earlierClosed = new AtomicBoolean();
+        AtomicBoolean laterClosed = new AtomicBoolean();
+        firstFailure.register(0, () -> earlierClosed.set(true));
+        firstFailure.register(10, () -> laterClosed.set(true));
+        firstFailure.mark(4);
+        assertFalse(earlierClosed.get());
+        assertTrue(laterClosed.get());
+
+        // 登记时已经不需要执行的立即中止
+        AtomicBoolean lateRegistered = new AtomicBoolean();
+        firstFailure.register(20, () -> lateRegistered.set(true));
+        assertTrue(lateRegistered.get());
+
+        firstFailure.cancelAll();
+        assertTrue(earlierClosed.get());
+    }
+}